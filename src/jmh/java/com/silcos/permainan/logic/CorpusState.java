@@ -0,0 +1,60 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardGame;
+import com.silcos.board.BoardMonoStateCache;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Positions of one phase of the {@link PositionCorpus}, both as BitBoards &
+ * as state-caches, over which each benchmark runs.
+ */
+@State(Scope.Thread)
+public class CorpusState {
+
+    @Param({"OPENING", "MIDDLEGAME", "ENDGAME"})
+    public String phase;
+
+    public BitBoard[] positions;
+    public BoardMonoStateCache[] stateCaches;
+
+    @Setup
+    public void setUp() {
+        final String[] notations;
+
+        switch (phase) {
+            case "OPENING": notations = PositionCorpus.OPENING; break;
+            case "MIDDLEGAME": notations = PositionCorpus.MIDDLEGAME; break;
+            case "ENDGAME": notations = PositionCorpus.ENDGAME; break;
+            default: throw new IllegalArgumentException("Invalid phase: " + phase);
+        }
+
+        final List<BitBoard> parsed = PositionCorpus.parse(notations);
+        positions = parsed.toArray(new BitBoard[parsed.size()]);
+        stateCaches = new BoardMonoStateCache[positions.length];
+
+        final PermainanGame scratchGame = newScratchGame();
+        for (int i = 0; i < positions.length; i++) {
+            stateCaches[i] = positions[i].toCache(scratchGame);
+        }
+    }
+
+    /**
+     * @return a game with two wired players, whose grid the positions are
+     *      applied to when building state-caches
+     */
+    static PermainanGame newScratchGame() {
+        final PermainanGame game = new PermainanGame();
+        final BoardGame.GameInputController inputController = PermainanGame.extractController(game);
+
+        PermainanGame.wirePlayers(game, new HumanPermainanPlayer(0, game, inputController),
+                new HumanPermainanPlayer(1, game, inputController));
+        return game;
+    }
+
+}
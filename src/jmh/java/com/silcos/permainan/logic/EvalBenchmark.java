@@ -0,0 +1,46 @@
+package com.silcos.permainan.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GridAnalyzer#eval} over each position of the corpus,
+ * against the evaluation kept updated by {@link BitBoard#eval()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+
+    @Benchmark
+    public void evalBitBoard(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            blackhole.consume(GridAnalyzer.eval(position));
+        }
+    }
+
+    @Benchmark
+    public void evalIncremental(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            blackhole.consume(position.eval());
+        }
+    }
+
+    @Benchmark
+    public void evalStateCache(CorpusState corpus, Blackhole blackhole) {
+        for (int i = 0; i < corpus.stateCaches.length; i++) {
+            blackhole.consume(GridAnalyzer.eval(corpus.stateCaches[i]));
+        }
+    }
+
+}
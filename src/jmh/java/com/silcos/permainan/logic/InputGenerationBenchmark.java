@@ -0,0 +1,111 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.CompactLoc2D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the generation of inputs for the side-to-move of each position
+ * of the corpus: all of them through {@link GridAnalyzer#findAllInputs} &
+ * {@link MoveGenerator}, and the long moves alone through
+ * {@link LongMoveAnalyzer}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputGenerationBenchmark {
+
+    private final int[] mMoves = new int[MoveGenerator.MAX_MOVES];
+
+    @Benchmark
+    public int generatePackedMoves(CorpusState corpus) {
+        int count = 0;
+
+        for (BitBoard position : corpus.positions) {
+            count += MoveGenerator.generate(position, mMoves, 0);
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public void findAllInputsBitBoard(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            blackhole.consume(GridAnalyzer.findAllInputs(position.sideToMove(), position, false, null));
+        }
+    }
+
+    @Benchmark
+    public void findAllInputsStateCache(CorpusState corpus, Blackhole blackhole) {
+        for (int i = 0; i < corpus.positions.length; i++) {
+            blackhole.consume(GridAnalyzer.findAllInputs(corpus.positions[i].sideToMove(),
+                    corpus.stateCaches[i], null));
+        }
+    }
+
+    @Benchmark
+    public void isLongMovePossible(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            long pieces = position.pieces(position.sideToMove());
+
+            while (pieces != 0) {
+                final int cell = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+
+                final LongMoveAnalyzer analyzer = new LongMoveAnalyzer(position,
+                        new CompactLoc2D(BitBoard.row(cell), BitBoard.column(cell)), false);
+                for (int dir = 0; dir < 4; dir++) {
+                    blackhole.consume(analyzer.isLongMovePossible(dir));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void findAllLongMovesBitBoard(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            long pieces = position.pieces(position.sideToMove());
+
+            while (pieces != 0) {
+                final int cell = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+
+                blackhole.consume(new LongMoveAnalyzer(position,
+                        new CompactLoc2D(BitBoard.row(cell), BitBoard.column(cell)), false)
+                        .findAllLongMoves());
+            }
+        }
+    }
+
+    @Benchmark
+    public void findAllLongMovesStateCache(CorpusState corpus, Blackhole blackhole) {
+        for (int i = 0; i < corpus.positions.length; i++) {
+            final BitBoard position = corpus.positions[i];
+            long pieces = position.pieces(position.sideToMove());
+
+            while (pieces != 0) {
+                final int cell = Long.numberOfTrailingZeros(pieces);
+                pieces &= pieces - 1;
+
+                blackhole.consume(new LongMoveAnalyzer(corpus.stateCaches[i],
+                        new CompactLoc2D(BitBoard.row(cell), BitBoard.column(cell)))
+                        .findAllLongMoves());
+            }
+        }
+    }
+
+}
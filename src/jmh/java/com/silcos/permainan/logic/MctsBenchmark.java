@@ -0,0 +1,61 @@
+package com.silcos.permainan.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Monte Carlo tree search of a fixed number of playouts, over
+ * each position of the corpus, on a varying number of threads; which shows
+ * how the playout rate scales with them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MctsBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    /* The playouts of each turn of MctsPermainanPlayer by default */
+    @Param({"20000"})
+    public long playouts;
+
+    private final MctsSearch mSearch = new MctsSearch();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mSearch.setThreadCount(threads);
+        mSearch.setPlayoutBudget(playouts);
+        mSearch.setRandomSeed(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mSearch.close();
+    }
+
+    @Benchmark
+    public void findBestInput(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            blackhole.consume(mSearch.findBestInput(position));
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.silcos.permainan.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding & decoding of move messages by
+ * {@link PermainanModulator}. Decoded moves are delivered to a player that
+ * only counts them, so that the game it belongs to is never played.
+ *
+ * Binary messages are decoded from a whole cycle of sequence numbers sent
+ * by a peer, as the modulator drops messages that repeat earlier ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModulatorBenchmark {
+
+    private static class CountingPlayer extends PermainanPlayer {
+
+        int mDelivered;
+
+        CountingPlayer(PermainanGame game) {
+            super(game, PermainanGame.extractController(game));
+        }
+
+        @Override
+        public boolean deliverMove(int srcRow, int srcCol, int dstRow, int dstCol) {
+            mDelivered += srcRow + srcCol + dstRow + dstCol;
+            return true;
+        }
+
+        @Override
+        public boolean deliverLongMove(int dir, int row, int col) {
+            mDelivered += dir + row + col;
+            return true;
+        }
+
+    }
+
+    private CountingPlayer mPlayer;
+    private PermainanModulator mModulator;
+    private String mMoveMessage;
+    private String mLongMoveMessage;
+    private final byte[] mBinaryMessages = new byte[2 * PermainanModulator.MAX_BINARY_LENGTH];
+
+    /* Move & long move messages of the peer, one pair per 2 sequence numbers */
+    private final byte[] mPeerMessages = new byte[(PermainanModulator.SEQUENCE_MASK + 1) / 2 * 8];
+    private int mPeerOffset;
+
+    @Setup
+    public void setUp() {
+        mPlayer = new CountingPlayer(new PermainanGame());
+        mModulator = new PermainanModulator(mPlayer);
+        mMoveMessage = mModulator.encodeMoveTask(2, 3, 3, 4);
+        mLongMoveMessage = mModulator.encodeLongMoveTask(PermainanGrid.DOWN, 1, 2);
+        encodeBinaryMessages();
+
+        final PermainanModulator peer = new PermainanModulator();
+        for (int offset = 0; offset < mPeerMessages.length; ) {
+            offset += peer.encodeMoveTask(2, 3, 3, 4, mPeerMessages, offset);
+            offset += peer.encodeLongMoveTask(PermainanGrid.DOWN, 1, 2, mPeerMessages, offset);
+        }
+    }
+
+    private int encodeBinaryMessages() {
+        final int length = mModulator.encodeMoveTask(2, 3, 3, 4, mBinaryMessages, 0);
+        return length + mModulator.encodeLongMoveTask(PermainanGrid.DOWN, 1, 2, mBinaryMessages, length);
+    }
+
+    @Benchmark
+    public void encodeMove(Blackhole blackhole) {
+        blackhole.consume(mModulator.encodeMoveTask(2, 3, 3, 4));
+        blackhole.consume(mModulator.encodeLongMoveTask(PermainanGrid.DOWN, 1, 2));
+    }
+
+    @Benchmark
+    public int decodeMove() {
+        mModulator.decodeMoveTask(mMoveMessage);
+        mModulator.decodeMoveTask(mLongMoveMessage);
+        return mPlayer.mDelivered;
+    }
+
+    @Benchmark
+    public int encodeMoveBinary() {
+        return encodeBinaryMessages();
+    }
+
+    @Benchmark
+    public int decodeMoveBinary() {
+        mPeerOffset += mModulator.decodeMoveTask(mPeerMessages, mPeerOffset);
+        mPeerOffset += mModulator.decodeMoveTask(mPeerMessages, mPeerOffset);
+
+        if (mPeerOffset == mPeerMessages.length)
+            mPeerOffset = 0;// the next cycle follows on
+        return mPlayer.mDelivered;
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.silcos.permainan.logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the search of the computer player to a fixed depth, over each
+ * position of the corpus. The transposition table is cleared before each
+ * invocation & ties are broken with a fixed seed, so every invocation
+ * searches the same tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    /* The depth searched by CompPermainanPlayer by default */
+    @Param({"3"})
+    public int depth;
+
+    private final PermainanSearch mSearch =
+            new PermainanSearch(new TranspositionTable(CompPermainanPlayer.DEFAULT_TABLE_SIZE_MB));
+
+    @Setup(Level.Invocation)
+    public void resetSearch() {
+        mSearch.getTranspositionTable().clear();
+        mSearch.setRandomSeed(0);
+    }
+
+    @Benchmark
+    public void findBestInput(CorpusState corpus, Blackhole blackhole) {
+        for (BitBoard position : corpus.positions) {
+            blackhole.consume(mSearch.findBestInput(position, depth));
+        }
+    }
+
+}
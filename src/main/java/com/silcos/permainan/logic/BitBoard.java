@@ -0,0 +1,514 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardMonoStateCache;
+import com.silcos.board.Piece;
+
+/**
+ * Compact representation of a Permainan position. The pebbles of each
+ * player are held in a 36-bit mask (one bit per cell, cell (r, c) being
+ * bit {@code r * 6 + c}), along with the id of the player to move.
+ *
+ * Unlike {@link BoardMonoStateCache}, a BitBoard holds no {@link Piece}
+ * objects and so it is cheap to copy, compare & store.
+ *
+ * Its Zobrist hash & its score by a {@link PieceSquareTable} are kept
+ * updated as moves are made & unmade.
+ */
+public final class BitBoard {
+
+    public static final int SIZE = 6;
+    public static final int CELLS = SIZE * SIZE;
+
+    /**
+     * Mask with a bit set for each of the 36 cells.
+     */
+    public static final long ALL_CELLS = (1L << CELLS) - 1;
+
+    /**
+     * Most pebbles a player has, as at the start of a game.
+     */
+    public static final int MAX_PIECES = 12;
+
+    /* Undo records returned by makeMove(): from | to << 6 | killed | side << 13 */
+    private static final int UNDO_KILLED = 1 << 12;
+
+    private long mPieces0;
+    private long mPieces1;
+    private int mSideToMove;
+    private long mHash;
+    private PieceSquareTable mEvalTable;
+    private int mEval;
+
+    public BitBoard(long pieces0, long pieces1, int sideToMove) {
+        if ((pieces0 & pieces1) != 0 || ((pieces0 | pieces1) & ~ALL_CELLS) != 0
+                || Long.bitCount(pieces0) > MAX_PIECES || Long.bitCount(pieces1) > MAX_PIECES) {
+            throw new IllegalArgumentException("Invalid masks: " + Long.toHexString(pieces0)
+                    + ", " + Long.toHexString(pieces1));
+        }
+
+        mPieces0 = pieces0;
+        mPieces1 = pieces1;
+        mSideToMove = sideToMove;
+        mHash = Zobrist.hash(pieces0, pieces1, sideToMove);
+        mEvalTable = PieceSquareTable.CLASSIC;
+        mEval = mEvalTable.score(this);
+    }
+
+    public BitBoard(BitBoard other) {
+        mPieces0 = other.mPieces0;
+        mPieces1 = other.mPieces1;
+        mSideToMove = other.mSideToMove;
+        mHash = other.mHash;
+        mEvalTable = other.mEvalTable;
+        mEval = other.mEval;
+    }
+
+    /**
+     * @return the position at the start of a game: the player 0 on the
+     *      two top rows & the player 1 on the two bottom rows, with the
+     *      player 0 to move (see {@link PermainanPlayer#initialPlacement()})
+     */
+    public static BitBoard initialPosition() {
+        final long topRows = (1L << 12) - 1;
+        return new BitBoard(topRows, topRows << 24, 0);
+    }
+
+    /**
+     * Parses a position from its notation (see {@link #toNotation()}).
+     *
+     * @param notation
+     * @return
+     */
+    public static BitBoard parse(String notation) {
+        final String[] parts = notation.trim().split(" ");
+        final String[] rows = parts[0].split("/");
+
+        if (parts.length != 2 || rows.length != SIZE) {
+            throw new IllegalArgumentException("Invalid position notation: " + notation);
+        }
+
+        long pieces0 = 0;
+        long pieces1 = 0;
+
+        for (int r = 0; r < SIZE; r++) {
+            if (rows[r].length() != SIZE) {
+                throw new IllegalArgumentException("Invalid row in notation: " + rows[r]);
+            }
+
+            for (int c = 0; c < SIZE; c++) {
+                switch (rows[r].charAt(c)) {
+                    case 'r': pieces0 |= bit(cell(r, c)); break;
+                    case 'b': pieces1 |= bit(cell(r, c)); break;
+                    case '.': break;
+                    default: throw new IllegalArgumentException("Invalid cell in notation: " + rows[r]);
+                }
+            }
+        }
+
+        switch (parts[1]) {
+            case "r": return new BitBoard(pieces0, pieces1, 0);
+            case "b": return new BitBoard(pieces0, pieces1, 1);
+            default: throw new IllegalArgumentException("Invalid side in notation: " + parts[1]);
+        }
+    }
+
+    /**
+     * Copies the given position into this one.
+     */
+    public void set(BitBoard other) {
+        mPieces0 = other.mPieces0;
+        mPieces1 = other.mPieces1;
+        mSideToMove = other.mSideToMove;
+        mHash = other.mHash;
+        mEvalTable = other.mEvalTable;
+        mEval = other.mEval;
+    }
+
+    public static int cell(int row, int col) {
+        return row * SIZE + col;
+    }
+
+    public static int row(int cell) {
+        return cell / SIZE;
+    }
+
+    public static int column(int cell) {
+        return cell % SIZE;
+    }
+
+    public static long bit(int cell) {
+        return 1L << cell;
+    }
+
+    public long pieces(int playerId) {
+        return (playerId == 0) ? mPieces0 : mPieces1;
+    }
+
+    public long occupied() {
+        return mPieces0 | mPieces1;
+    }
+
+    public int sideToMove() {
+        return mSideToMove;
+    }
+
+    public void setSideToMove(int sideToMove) {
+        if (sideToMove != mSideToMove)
+            mHash ^= Zobrist.SIDE_TO_MOVE;
+        mSideToMove = sideToMove;
+    }
+
+    /**
+     * @return the Zobrist hash of this position, which is kept updated
+     *      incrementally as moves are made & unmade
+     */
+    public long hash() {
+        return mHash;
+    }
+
+    /**
+     * @return the score of this position by its piece-square table, i.e.
+     *      +ve values favour the player 0; which is kept updated
+     *      incrementally as moves are made & unmade
+     */
+    public int eval() {
+        return mEval;
+    }
+
+    public PieceSquareTable evalTable() {
+        return mEvalTable;
+    }
+
+    /**
+     * Sets the table this position is scored by, which is
+     * {@link PieceSquareTable#CLASSIC} unless set otherwise. Positions
+     * copied or made from this one keep the table.
+     *
+     * @param table
+     */
+    public void setEvalTable(PieceSquareTable table) {
+        if (table == mEvalTable)
+            return;
+
+        mEvalTable = table;
+        mEval = table.score(this);
+    }
+
+    /**
+     * @return the id of the player holding the given cell, or -1 if
+     *      the cell is empty
+     */
+    public int playerAt(int cell) {
+        final long bit = 1L << cell;
+        if ((mPieces0 & bit) != 0)
+            return 0;
+        if ((mPieces1 & bit) != 0)
+            return 1;
+        return -1;
+    }
+
+    public int playerAt(int row, int col) {
+        return playerAt(cell(row, col));
+    }
+
+    public boolean isEmpty(int cell) {
+        return ((mPieces0 | mPieces1) & (1L << cell)) == 0;
+    }
+
+    public int pieceCount(int playerId) {
+        return Long.bitCount(pieces(playerId));
+    }
+
+    /**
+     * Builds the position resulting from moving the pebble at
+     * {@code from} to {@code to}, just like
+     * {@link BoardMonoStateCache#doMove}. Any pebble on the destination
+     * is removed (killed) and the turn passes to the other player.
+     *
+     * @param from cell of the moving pebble
+     * @param to destination cell
+     * @return the new position; this one is left unmodified
+     */
+    public BitBoard doMove(int from, int to) {
+        final long fromBit = 1L << from;
+        final long toBit = 1L << to;
+        final BitBoard next = new BitBoard(this);
+
+        if ((mPieces0 & fromBit) != 0) {
+            next.mPieces0 = (mPieces0 & ~fromBit) | toBit;
+            next.mPieces1 = mPieces1 & ~toBit;
+            next.mSideToMove = 1;
+            next.mHash ^= Zobrist.moveKey(0, from, to);
+            next.mEval += mEvalTable.score(0, to) - mEvalTable.score(0, from);
+            if ((mPieces1 & toBit) != 0) {
+                next.mHash ^= Zobrist.pieceKey(1, to);
+                next.mEval -= mEvalTable.score(1, to);
+            }
+        } else if ((mPieces1 & fromBit) != 0) {
+            next.mPieces1 = (mPieces1 & ~fromBit) | toBit;
+            next.mPieces0 = mPieces0 & ~toBit;
+            next.mSideToMove = 0;
+            next.mHash ^= Zobrist.moveKey(1, from, to);
+            next.mEval += mEvalTable.score(1, to) - mEvalTable.score(1, from);
+            if ((mPieces0 & toBit) != 0) {
+                next.mHash ^= Zobrist.pieceKey(0, to);
+                next.mEval -= mEvalTable.score(0, to);
+            }
+        } else {
+            throw new IllegalArgumentException("No pebble at cell " + from);
+        }
+
+        if (next.mSideToMove != mSideToMove)
+            next.mHash ^= Zobrist.SIDE_TO_MOVE;
+        return next;
+    }
+
+    /**
+     * Moves the pebble at {@code from} to {@code to} in this position,
+     * killing any pebble on the destination, and passes the turn to the
+     * other player. The returned undo record reverts the move when given
+     * to {@link #unmakeMove(int)}.
+     *
+     * @param from cell of the moving pebble
+     * @param to destination cell
+     * @return undo record for this move
+     */
+    public int makeMove(int from, int to) {
+        final long fromBit = 1L << from;
+        final long toBit = 1L << to;
+        int undo = from | (to << 6) | (mSideToMove << 13);
+
+        final int mover;
+
+        if ((mPieces0 & fromBit) != 0) {
+            if ((mPieces1 & toBit) != 0) {
+                undo |= UNDO_KILLED;
+                mPieces1 &= ~toBit;
+                mHash ^= Zobrist.pieceKey(1, to);
+                mEval -= mEvalTable.score(1, to);
+            }
+            mPieces0 = (mPieces0 & ~fromBit) | toBit;
+            mover = 0;
+        } else if ((mPieces1 & fromBit) != 0) {
+            if ((mPieces0 & toBit) != 0) {
+                undo |= UNDO_KILLED;
+                mPieces0 &= ~toBit;
+                mHash ^= Zobrist.pieceKey(0, to);
+                mEval -= mEvalTable.score(0, to);
+            }
+            mPieces1 = (mPieces1 & ~fromBit) | toBit;
+            mover = 1;
+        } else {
+            throw new IllegalArgumentException("No pebble at cell " + from);
+        }
+
+        mHash ^= Zobrist.moveKey(mover, from, to);
+        mEval += mEvalTable.score(mover, to) - mEvalTable.score(mover, from);
+        if (mSideToMove == mover)
+            mHash ^= Zobrist.SIDE_TO_MOVE;
+        mSideToMove = 1 - mover;
+        return undo;
+    }
+
+    /**
+     * Reverts a move made by {@link #makeMove(int, int)}, restoring the
+     * killed pebble if any. Moves must be unmade in the reverse order of
+     * being made.
+     *
+     * @param undo undo record returned by makeMove()
+     */
+    public void unmakeMove(int undo) {
+        final int from = undo & 63;
+        final int to = (undo >>> 6) & 63;
+        final long fromBit = 1L << from;
+        final long toBit = 1L << to;
+        final boolean killed = (undo & UNDO_KILLED) != 0;
+        final int mover = ((mPieces0 & toBit) != 0) ? 0 : 1;
+
+        if (mover == 0) {
+            mPieces0 = (mPieces0 & ~toBit) | fromBit;
+            if (killed)
+                mPieces1 |= toBit;
+        } else {
+            mPieces1 = (mPieces1 & ~toBit) | fromBit;
+            if (killed)
+                mPieces0 |= toBit;
+        }
+
+        mHash ^= Zobrist.moveKey(mover, from, to);
+        mEval -= mEvalTable.score(mover, to) - mEvalTable.score(mover, from);
+        if (killed) {
+            mHash ^= Zobrist.pieceKey(1 - mover, to);
+            mEval += mEvalTable.score(1 - mover, to);
+        }
+
+        final int sideToMove = (undo >>> 13) & 1;
+        if (sideToMove != mSideToMove)
+            mHash ^= Zobrist.SIDE_TO_MOVE;
+        mSideToMove = sideToMove;
+    }
+
+    /**
+     * Builds a BitBoard from a state-cache of the board.
+     *
+     * @param stateCache
+     * @param sideToMove player-id of the player who moves next
+     * @return
+     */
+    public static BitBoard fromCache(BoardMonoStateCache stateCache, int sideToMove) {
+        long pieces0 = 0;
+        long pieces1 = 0;
+
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                final Piece piece = stateCache.pieceAt(r, c);
+                if (piece == null)
+                    continue;
+
+                if (piece.playerId() == 0) {
+                    pieces0 |= bit(cell(r, c));
+                } else {
+                    pieces1 |= bit(cell(r, c));
+                }
+            }
+        }
+
+        return new BitBoard(pieces0, pieces1, sideToMove);
+    }
+
+    /**
+     * Builds a BitBoard from the pebbles currently placed on the grid.
+     *
+     * @param grid
+     * @param sideToMove player-id of the player who moves next
+     * @return
+     */
+    public static BitBoard fromGrid(PermainanGrid grid, int sideToMove) {
+        long pieces0 = 0;
+        long pieces1 = 0;
+
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                final Piece piece = (Piece) grid.getCell(r, c).getHolder();
+                if (piece == null)
+                    continue;
+
+                if (piece.playerId() == 0) {
+                    pieces0 |= bit(cell(r, c));
+                } else {
+                    pieces1 |= bit(cell(r, c));
+                }
+            }
+        }
+
+        return new BitBoard(pieces0, pieces1, sideToMove);
+    }
+
+    /**
+     * Places pebbles on the grid so that it holds this position. Pebbles
+     * are taken in order from each player's array, in a row-major order
+     * of the cells they are placed on.
+     *
+     * @param grid
+     * @param pieces0 pebbles of the player 0
+     * @param pieces1 pebbles of the player 1
+     */
+    public void applyTo(PermainanGrid grid, Piece[] pieces0, Piece[] pieces1) {
+        if (pieceCount(0) > pieces0.length || pieceCount(1) > pieces1.length) {
+            throw new IllegalArgumentException("Not enough pebbles to place the position");
+        }
+
+        int next0 = 0;
+        int next1 = 0;
+
+        for (int cell = 0; cell < CELLS; cell++) {
+            Piece holder = null;
+
+            switch (playerAt(cell)) {
+                case 0: holder = pieces0[next0++]; break;
+                case 1: holder = pieces1[next1++]; break;
+                default: break;
+            }
+
+            grid.getCell(row(cell), column(cell)).setHolder(holder);
+        }
+    }
+
+    /**
+     * Builds a state-cache holding this position. The grid of the given
+     * game is overwritten with this position, using the pebbles of its
+     * players; so it should be a scratch game, not a live one.
+     *
+     * @param scratchGame game with both players wired
+     * @return
+     */
+    public BoardMonoStateCache toCache(PermainanGame scratchGame) {
+        applyTo(scratchGame.board(), scratchGame.getPlayer(0).pieces(),
+                scratchGame.getPlayer(1).pieces());
+        return BoardMonoStateCache.buildCache(scratchGame);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BitBoard))
+            return false;
+
+        final BitBoard other = (BitBoard) o;
+        return mPieces0 == other.mPieces0 &&
+                mPieces1 == other.mPieces1 &&
+                mSideToMove == other.mSideToMove;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mHash ^ (mHash >>> 32));
+    }
+
+    /**
+     * @return a one-line notation of this position: the 6 rows separated
+     *      by '/', with 'r' for a pebble of the player 0, 'b' for one of the
+     *      player 1 & '.' for an empty cell; followed by the side to move,
+     *      e.g. "rrrrrr/rrrrrr/....../....../bbbbbb/bbbbbb r"
+     */
+    public String toNotation() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int r = 0; r < SIZE; r++) {
+            if (r != 0)
+                builder.append('/');
+
+            for (int c = 0; c < SIZE; c++) {
+                switch (playerAt(r, c)) {
+                    case 0: builder.append('r'); break;
+                    case 1: builder.append('b'); break;
+                    default: builder.append('.'); break;
+                }
+            }
+        }
+
+        return builder.append(mSideToMove == 0 ? " r" : " b").toString();
+    }
+
+    /**
+     * @return a 6-line diagram of the board, 'r' being a pebble of the
+     *      player 0 and 'b' of the player 1
+     */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                switch (playerAt(r, c)) {
+                    case 0: builder.append('r'); break;
+                    case 1: builder.append('b'); break;
+                    default: builder.append('.'); break;
+                }
+            }
+            builder.append('\n');
+        }
+
+        return builder.append("side: ").append(mSideToMove).toString();
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardGame;
+import com.silcos.board.BoardMonoStateCache;
+import com.silcos.board.Move;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * {@link BoardStateHistory} keeps the board-state after each move of a game
+ * compactly: each entry holds only the move leading into it, packed in a
+ * char as (from cell | to cell << 6), and a full state-cache (keyframe) is
+ * kept only every {@link #KEYFRAME_INTERVAL} entries. A state is rebuilt by
+ * replaying the moves after its nearest keyframe, so its cost is bounded by
+ * the interval.
+ *
+ * The pebbles of a rebuilt state are the very ones of the game, as a
+ * keyframe holds them & a replayed move only moves them around.
+ */
+final class BoardStateHistory {
+
+    /**
+     * Most entries between two keyframes.
+     */
+    static final int KEYFRAME_INTERVAL = 16;
+
+    /* Entries that start from a state, rather than a move */
+    private static final char NO_MOVE = 0xFFFF;
+
+    private static final int CELL_MASK = 0x3F;
+    private static final int TO_SHIFT = 6;
+
+    private char[] mMoves = new char[KEYFRAME_INTERVAL];
+    private int mSize;
+
+    /* Keyframes & the entries they are at, in order */
+    private final ArrayList<BoardMonoStateCache> mKeyframes = new ArrayList<>();
+    private int[] mKeyframeEntries = new int[4];
+
+    /**
+     * @return number of entries
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Adds the current state of the game as a keyframe, with no move
+     * leading into it (e.g. the initial state).
+     *
+     * @param game
+     */
+    void addState(BoardGame game) {
+        append(NO_MOVE);
+        addKeyframe(BoardMonoStateCache.buildCache(game));
+    }
+
+    /**
+     * Adds the state reached by the given move, which the game has just
+     * made.
+     *
+     * @param game
+     * @param fromCell cell the pebble moved from, as by {@link BitBoard#cell(int, int)}
+     * @param toCell cell the pebble moved to
+     */
+    void addMove(BoardGame game, int fromCell, int toCell) {
+        if (mSize == 0) {
+            throw new IllegalStateException("The history has no state to move from");
+        }
+
+        append((char) (fromCell | toCell << TO_SHIFT));
+
+        if (mSize - 1 - lastKeyframeEntry() >= KEYFRAME_INTERVAL)
+            addKeyframe(BoardMonoStateCache.buildCache(game));
+    }
+
+    /**
+     * Moves the pebble of the latest entry on to the given cell, as a step
+     * of a long move does; the entry then holds the long move so far.
+     *
+     * @param game
+     * @param toCell
+     */
+    void extendLastMove(BoardGame game, int toCell) {
+        final char move = (mSize > 0) ? mMoves[mSize - 1] : NO_MOVE;
+        if (move == NO_MOVE) {
+            throw new IllegalStateException("The latest entry of the history is not a move");
+        }
+
+        mMoves[mSize - 1] = (char) ((move & CELL_MASK) | toCell << TO_SHIFT);
+
+        if (lastKeyframeEntry() == mSize - 1)
+            mKeyframes.set(mKeyframes.size() - 1, BoardMonoStateCache.buildCache(game));
+    }
+
+    /**
+     * Rebuilds the state of the given entry.
+     *
+     * @param entry
+     * @return
+     */
+    BoardMonoStateCache get(int entry) {
+        if (entry < 0 || entry >= mSize) {
+            throw new IndexOutOfBoundsException("Entry " + entry + " of " + mSize);
+        }
+
+        int keyframe = Arrays.binarySearch(mKeyframeEntries, 0, mKeyframes.size(), entry);
+        if (keyframe < 0)
+            keyframe = -keyframe - 2;// the one before the entry
+
+        BoardMonoStateCache state = mKeyframes.get(keyframe);
+        for (int i = mKeyframeEntries[keyframe] + 1; i <= entry; i++) {
+            final int from = mMoves[i] & CELL_MASK;
+            final int to = mMoves[i] >>> TO_SHIFT;
+
+            state = state.doMove(new Move(false, BitBoard.row(from), BitBoard.column(from),
+                    BitBoard.row(to), BitBoard.column(to)), BitBoard.SIZE, BitBoard.SIZE);
+        }
+
+        return state;
+    }
+
+    private void append(char move) {
+        if (mSize == mMoves.length)
+            mMoves = Arrays.copyOf(mMoves, mSize * 2);
+
+        mMoves[mSize++] = move;
+    }
+
+    private void addKeyframe(BoardMonoStateCache state) {
+        final int count = mKeyframes.size();
+        if (count == mKeyframeEntries.length)
+            mKeyframeEntries = Arrays.copyOf(mKeyframeEntries, count * 2);
+
+        mKeyframeEntries[count] = mSize - 1;
+        mKeyframes.add(state);
+    }
+
+    private int lastKeyframeEntry() {
+        return mKeyframeEntries[mKeyframes.size() - 1];
+    }
+
+}
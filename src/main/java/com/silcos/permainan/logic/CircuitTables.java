@@ -0,0 +1,207 @@
+package com.silcos.permainan.logic;
+
+import static com.silcos.permainan.logic.PermainanGrid.DOWN;
+import static com.silcos.permainan.logic.PermainanGrid.LEFT;
+import static com.silcos.permainan.logic.PermainanGrid.RIGHT;
+import static com.silcos.permainan.logic.PermainanGrid.UP;
+
+/**
+ * {@link CircuitTables} holds precomputed tables for the two circuits
+ * of the Permainan board, along which all long moves happen.
+ *
+ * Each circuit is a loop of 24 cells: four lines of 6 cells, joined at
+ * their ends by the arcs. The inner circuit runs along row 1 (left to
+ * right), column 4 (top to bottom), row 4 (right to left) & column 1
+ * (bottom to top); the outer one does the same over rows 2 & 3 and
+ * columns 3 & 2. Cells where two lines cross appear twice in a loop.
+ *
+ * Cells are indexed as in {@link BitBoard}, i.e. {@code row * 6 + col}.
+ */
+public final class CircuitTables {
+
+    public static final int INNER = 0;
+    public static final int OUTER = 1;
+
+    /**
+     * Length of each circuit loop.
+     */
+    public static final int LOOP_LENGTH = 24;
+
+    /**
+     * The cells of each circuit, in loop order. Steps from index
+     * {@code 6k + 5} to {@code 6k + 6} are the arc hops.
+     */
+    public static final int[][] LOOPS = new int[2][LOOP_LENGTH];
+
+    /**
+     * Mask of the cells lying on each circuit.
+     */
+    public static final long[] CIRCUIT_MASKS = new long[2];
+
+    /* Per (cell, dir) tables, indexed by cell * 4 + dir */
+    private static final int[][] sPaths = new int[BitBoard.CELLS * 4][];
+    private static final int[] sArcSteps = new int[BitBoard.CELLS * 4];
+    private static final int[] sFirstArc = new int[BitBoard.CELLS * 4];
+    private static final long[] sClearMasks = new long[BitBoard.CELLS * 4];
+    private static final int[] sCircuits = new int[BitBoard.CELLS * 4];
+
+    static {
+        for (int circuit = INNER; circuit <= OUTER; circuit++) {
+            final int k = circuit + 1;// row & column of the first line
+            final int[] loop = LOOPS[circuit];
+
+            for (int i = 0; i < 6; i++) {
+                loop[i] = BitBoard.cell(k, i);
+                loop[6 + i] = BitBoard.cell(i, 5 - k);
+                loop[12 + i] = BitBoard.cell(5 - k, 5 - i);
+                loop[18 + i] = BitBoard.cell(5 - i, k);
+            }
+
+            for (int cell : loop) {
+                CIRCUIT_MASKS[circuit] |= BitBoard.bit(cell);
+            }
+        }
+
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            for (int dir = 0; dir < 4; dir++) {
+                buildPath(cell, dir);
+            }
+        }
+    }
+
+    /**
+     * Finds the position of (row, col) in a loop, on the line that is
+     * followed by moving in the given direction.
+     *
+     * @return circuit * 24 + loop index; or -1 if no line passing through
+     *      the cell goes along dir
+     */
+    private static int locateOnLoop(int row, int col, int dir) {
+        for (int circuit = INNER; circuit <= OUTER; circuit++) {
+            final int k = circuit + 1;
+
+            if (dir == LEFT || dir == RIGHT) {
+                if (row == k)
+                    return circuit * LOOP_LENGTH + col;
+                if (row == 5 - k)
+                    return circuit * LOOP_LENGTH + 12 + (5 - col);
+            } else {
+                if (col == 5 - k)
+                    return circuit * LOOP_LENGTH + 6 + row;
+                if (col == k)
+                    return circuit * LOOP_LENGTH + 18 + (5 - row);
+            }
+        }
+
+        return -1;
+    }
+
+    private static void buildPath(int cell, int dir) {
+        final int row = BitBoard.row(cell);
+        final int col = BitBoard.column(cell);
+        final int slot = cell * 4 + dir;
+
+        sPaths[slot] = null;
+        sFirstArc[slot] = -1;
+        sCircuits[slot] = -1;
+
+        if ((row == 0 || row == 5) && (col == 0 || col == 5))
+            return;// long moves not allowed from corners
+        if ((dir == UP || dir == DOWN) && (col == 0 || col == 5))
+            return;// cannot long-move along an edge
+        if ((dir == LEFT || dir == RIGHT) && (row == 0 || row == 5))
+            return;
+
+        final int location = locateOnLoop(row, col, dir);
+        final int circuit = location / LOOP_LENGTH;
+        final int start = location % LOOP_LENGTH;
+        final int segmentDir;
+
+        switch (start / 6) {
+            case 0: segmentDir = RIGHT; break;
+            case 1: segmentDir = DOWN; break;
+            case 2: segmentDir = LEFT; break;
+            default: segmentDir = UP; break;
+        }
+
+        final int delta = (dir == segmentDir) ? 1 : LOOP_LENGTH - 1;
+        final int[] loop = LOOPS[circuit];
+        final int[] path = new int[LOOP_LENGTH];
+        int length = 0;
+        int arcSteps = 0;
+        int firstArc = -1;
+        long clearMask = 0;
+
+        for (int i = start; ; ) {
+            final boolean arcHop = (delta == 1) ? (i % 6 == 5) : (i % 6 == 0);
+            i = (i + delta) % LOOP_LENGTH;
+
+            if (loop[i] == cell)
+                break;// the long move cannot pass its starting cell
+
+            if (arcHop) {
+                arcSteps |= 1 << length;
+                if (firstArc == -1)
+                    firstArc = length;
+            }
+            if (firstArc == -1) {
+                clearMask |= BitBoard.bit(loop[i]);
+            }
+
+            path[length++] = loop[i];
+        }
+
+        sPaths[slot] = new int[length];
+        System.arraycopy(path, 0, sPaths[slot], 0, length);
+        sArcSteps[slot] = arcSteps;
+        sFirstArc[slot] = firstArc;
+        sClearMasks[slot] = clearMask;
+        sCircuits[slot] = circuit;
+    }
+
+    /**
+     * Cells visited, in order, by a long move starting at the given cell
+     * & direction; up to (but excluding) its return to the starting cell.
+     *
+     * @return the path, or null if no long move can start so
+     */
+    public static int[] path(int cell, int dir) {
+        return sPaths[cell * 4 + dir];
+    }
+
+    /**
+     * @return a bitmask over the indices of path(cell, dir), with a bit set
+     *      for each step that is reached over an arc
+     */
+    public static int arcSteps(int cell, int dir) {
+        return sArcSteps[cell * 4 + dir];
+    }
+
+    /**
+     * @return the index in path(cell, dir) of the first cell reached over
+     *      an arc
+     */
+    public static int firstArcStep(int cell, int dir) {
+        return sFirstArc[cell * 4 + dir];
+    }
+
+    /**
+     * @return mask of the cells between the given cell & the edge of the
+     *      board in the given direction; all of them must be empty for
+     *      a long move
+     */
+    public static long clearMask(int cell, int dir) {
+        return sClearMasks[cell * 4 + dir];
+    }
+
+    /**
+     * @return the circuit (INNER or OUTER) followed by a long move, or -1
+     */
+    public static int circuitOf(int cell, int dir) {
+        return sCircuits[cell * 4 + dir];
+    }
+
+    private CircuitTables() {
+    }
+
+}
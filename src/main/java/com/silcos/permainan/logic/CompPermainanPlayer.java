@@ -5,6 +5,14 @@ import com.silcos.board.BoardMonoStateCache;
 import com.silcos.board.BoardPlatformProvider;
 
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.silcos.board.BoardPlatformProvider.COMPUTER_TASK;
 
@@ -14,25 +22,476 @@ public class CompPermainanPlayer extends PermainanPlayer {
     private static final int INIT_ALPHA = Integer.MIN_VALUE;
     private static final int INIT_BETA = Integer.MAX_VALUE;
 
+    /**
+     * Default size of the transposition table of each computer player.
+     */
+    public static final int DEFAULT_TABLE_SIZE_MB = 2;
+
+    /**
+     * Default number of nodes a ponder search stops after.
+     */
+    public static final long DEFAULT_PONDER_NODE_BUDGET = 2000000;
+
+    /* Time a ponder search stops after, in case the opponent never plays */
+    private static final long PONDER_TIME_BUDGET_MILLIS = 60000;
+
     private GridChangeInput computeResult;
 
+    /**
+     * Whether the search is done by making & unmaking inputs on a single
+     * BitBoard (see {@link PermainanSearch}), instead of building a new
+     * state-cache for each input.
+     */
+    private boolean mMakeUnmakeSearch = true;
+    private final PermainanSearch mSearch =
+            new PermainanSearch(new TranspositionTable(DEFAULT_TABLE_SIZE_MB));
+
+    /* Limits of each search, which deepens iteratively until one is hit */
+    private int mSearchDepth = SDEP - 1;
+    private long mTimeBudgetMillis;
+    private long mNodeBudget;
+
+    /* Picks between equally good inputs, for variety; or null */
+    private Random mTieBreaker = new Random();
+
+    /* Perfect play for the endgames it covers; or null */
+    private Tablebase mTablebase;
+
+    /* Inputs for common openings; or null */
+    private OpeningBook mOpeningBook;
+
+    /*
+     * Searches the opponent's turn into the shared transposition table,
+     * with the settings of mSearch; pondering is stopped before they
+     * change, as that may clear the table
+     */
+    private volatile ExecutorService mPonderExecutor;
+    private final PermainanSearch mPonderSearch = new PermainanSearch();
+    private long mPonderNodeBudget = DEFAULT_PONDER_NODE_BUDGET;
+    private volatile Future<?> mPonderTask;
+    private volatile AtomicBoolean mPonderStop;
+
+    /* Set when the turn being searched for is taken back */
+    private volatile AtomicBoolean mTurnCancelled;
+
     public CompPermainanPlayer(int id, BoardGame work,
                                BoardGame.GameInputController inputController) {
         super(work, inputController);
         mId = id;
+        mSearch.setTieBreakingRandom(mTieBreaker);
+    }
+
+    public boolean isRandomTieBreaking() {
+        return mTieBreaker != null;
+    }
+
+    /**
+     * Sets whether this player picks randomly between equally good inputs,
+     * which is the default. Otherwise, it always plays the same input in
+     * the same position.
+     *
+     * @param randomTieBreaking
+     */
+    public void setRandomTieBreaking(boolean randomTieBreaking) {
+        mTieBreaker = randomTieBreaking ? new Random() : null;
+        mSearch.setTieBreakingRandom(mTieBreaker);
+    }
+
+    /**
+     * Breaks ties randomly with the given seed, so that games can be
+     * replayed.
+     *
+     * @param seed
+     */
+    public void setRandomSeed(long seed) {
+        mTieBreaker = new Random(seed);
+        mSearch.setTieBreakingRandom(mTieBreaker);
+    }
+
+    public boolean isMakeUnmakeSearch() {
+        return mMakeUnmakeSearch;
+    }
+
+    public void setMakeUnmakeSearch(boolean makeUnmakeSearch) {
+        mMakeUnmakeSearch = makeUnmakeSearch;
+    }
+
+    /**
+     * Resizes the transposition table kept across the turns of this player,
+     * clearing it.
+     *
+     * @param sizeInMegabytes size of the table, or 0 to search without one
+     */
+    public void setTranspositionTableSize(int sizeInMegabytes) {
+        stopPondering(true);
+        mSearch.setTranspositionTable(sizeInMegabytes == 0 ? null
+                : new TranspositionTable(sizeInMegabytes));
+    }
+
+    public int getSearchDepth() {
+        return mSearchDepth;
+    }
+
+    /**
+     * Sets the maximum number of plies searched for each input. With a
+     * time or node budget, this can be raised up to
+     * {@link PermainanSearch#MAX_DEPTH} so that the budget decides how deep
+     * each search goes.
+     *
+     * @param plies
+     */
+    public void setSearchDepth(int plies) {
+        if (plies < 1 || plies > PermainanSearch.MAX_DEPTH) {
+            throw new IllegalArgumentException("Invalid search depth: " + plies);
+        }
+
+        mSearchDepth = plies;
+    }
+
+    public long getTimeBudget() {
+        return mTimeBudgetMillis;
+    }
+
+    /**
+     * Sets the time after which a search stops deepening, returning the
+     * best input of the deepest completed iteration. The search to depth 1
+     * always completes.
+     *
+     * @param millis time budget of each search, or 0 for none
+     */
+    public void setTimeBudget(long millis) {
+        mTimeBudgetMillis = Math.max(0, millis);
+    }
+
+    public long getNodeBudget() {
+        return mNodeBudget;
+    }
+
+    /**
+     * Sets the number of nodes after which a search stops deepening, as a
+     * time budget that does not depend on the speed of the device.
+     *
+     * @param nodes node budget of each search, or 0 for none
+     */
+    public void setNodeBudget(long nodes) {
+        mNodeBudget = Math.max(0, nodes);
+    }
+
+    public int getSearchThreads() {
+        return mSearch.getThreadCount();
+    }
+
+    /**
+     * Sets the number of threads each search of this player runs on. The
+     * input picked at a fixed depth does not depend on it.
+     *
+     * @param threads
+     */
+    public void setSearchThreads(int threads) {
+        mSearch.setThreadCount(threads);
+    }
+
+    public boolean isQuiescence() {
+        return mSearch.isQuiescence();
+    }
+
+    /**
+     * Sets whether positions at the search depth are searched further for
+     * kills by long moves, which is the default.
+     *
+     * @param quiescence
+     */
+    public void setQuiescence(boolean quiescence) {
+        stopPondering(true);
+        mSearch.setQuiescence(quiescence);
+        mPonderSearch.setQuiescence(quiescence);
+    }
+
+    /**
+     * Sets the table positions are evaluated by (see
+     * {@link PermainanSearch#setEvalTable(PieceSquareTable)}).
+     *
+     * @param table
+     */
+    public void setEvalTable(PieceSquareTable table) {
+        stopPondering(true);
+        mSearch.setEvalTable(table);
+        mPonderSearch.setEvalTable(table);
+    }
+
+    /**
+     * Sets the points the evaluation gives for each pebble of the other
+     * player that can be killed (see
+     * {@link PermainanSearch#setThreatWeight(int)}).
+     *
+     * @param weight
+     */
+    public void setThreatWeight(int weight) {
+        stopPondering(true);
+        mSearch.setThreatWeight(weight);
+        mPonderSearch.setThreatWeight(weight);
+    }
+
+    public boolean isEscapesFirst() {
+        return mSearch.isEscapesFirst();
+    }
+
+    /**
+     * Sets whether quiet inputs of pebbles in danger are searched first
+     * (see {@link PermainanSearch#setEscapesFirst(boolean)}), which is off
+     * unless set.
+     *
+     * @param escapesFirst
+     */
+    public void setEscapesFirst(boolean escapesFirst) {
+        stopPondering(true);
+        mSearch.setEscapesFirst(escapesFirst);
+        mPonderSearch.setEscapesFirst(escapesFirst);
+    }
+
+    public Tablebase getTablebase() {
+        return mTablebase;
+    }
+
+    /**
+     * Sets the endgame tablebase this player looks positions up in (see
+     * {@link Tablebase#open(java.io.File)}) before searching them.
+     *
+     * @param tablebase tablebase, or null for none
+     */
+    public void setTablebase(Tablebase tablebase) {
+        mTablebase = tablebase;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return mOpeningBook;
+    }
+
+    /**
+     * Sets the opening book this player looks positions up in (see
+     * {@link OpeningBook#open(java.io.File)}) before searching them. Book
+     * inputs are picked by weight, unless ties are not broken randomly.
+     *
+     * @param openingBook opening book, or null for none
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        mOpeningBook = openingBook;
+    }
+
+    public boolean isPondering() {
+        return mPonderExecutor != null;
+    }
+
+    /**
+     * Sets whether this player ponders, i.e. keeps searching on its own
+     * thread while the opponent thinks. The position after this player's
+     * input is searched into the transposition table, which the search of
+     * its next turn then reuses. Pondering is stopped as soon as the
+     * opponent places an input, before this player searches, when its
+     * budget runs out (see {@link #setPonderNodeBudget(long)}) and for
+     * good when the game is stopped.
+     *
+     * @param pondering
+     */
+    public void setPondering(boolean pondering) {
+        if (pondering == isPondering())
+            return;
+
+        if (pondering) {
+            mPonderExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "permainan-ponder-" + mId);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            stopPondering(true);
+            mPonderExecutor.shutdown();
+            mPonderExecutor = null;
+        }
+    }
+
+    public long getPonderNodeBudget() {
+        return mPonderNodeBudget;
+    }
+
+    /**
+     * Sets the number of nodes after which pondering stops, if the
+     * opponent hasn't played by then. Pondering also stops after a minute.
+     *
+     * @param nodes node budget of each ponder search, which must not be 0
+     */
+    public void setPonderNodeBudget(long nodes) {
+        if (nodes <= 0) {
+            throw new IllegalArgumentException("Invalid ponder node budget: " + nodes);
+        }
+
+        mPonderNodeBudget = nodes;
+    }
+
+    private void startPondering(final BitBoard position) {
+        stopPondering(true);
+        final ExecutorService executor = mPonderExecutor;
+        if (executor == null || mSearch.getTranspositionTable() == null)
+            return;
+
+        mPonderSearch.setTranspositionTable(mSearch.getTranspositionTable());
+        mPonderStop = new AtomicBoolean();
+        mPonderSearch.setStopFlag(mPonderStop);
+
+        try {
+            mPonderTask = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    mPonderSearch.findBestInput(position, PermainanSearch.MAX_DEPTH,
+                            PONDER_TIME_BUDGET_MILLIS, mPonderNodeBudget);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile, as the game has stopped
+        }
+    }
+
+    /**
+     * Stops pondering, if it is on.
+     *
+     * @param wait whether to wait for the ponder search to return, so that
+     *      it no longer takes up a processor
+     */
+    private void stopPondering(boolean wait) {
+        final Future<?> task = mPonderTask;
+        if (task == null)
+            return;
+
+        mPonderStop.set(true);
+        if (!wait)
+            return;
+
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        mPonderTask = null;
+    }
+
+    @Override
+    public void onInputPlaced(int playerId) {
+        if (playerId != mId)
+            stopPondering(false);
+    }
+
+    @Override
+    public void cancelTurn() {
+        final AtomicBoolean cancelled = mTurnCancelled;
+        if (cancelled != null)
+            cancelled.set(true);
+    }
+
+    @Override
+    public void close() {
+        final ExecutorService executor = mPonderExecutor;
+        if (executor != null) {
+            stopPondering(false);
+            executor.shutdown();
+            mPonderExecutor = null;
+        }
+
+        mSearch.close();
+    }
+
+    /**
+     * Searches the given state the way {@link #onTurn()} does without
+     * making & unmaking inputs, i.e. by building a state-cache for each.
+     *
+     * @param forId player to move
+     * @param state
+     * @return score of the best input, +ve values favouring the player 0
+     */
+    int searchStateCache(int forId, BoardMonoStateCache state) {
+        final int score = doBestInput(forId, 0, INIT_ALPHA, INIT_BETA, state);
+        computeResult = null;
+        return score;
     }
 
     private int doBestInput(int forId, int thisDepth,
                             int alpha, int beta,
                             BoardMonoStateCache allInputs) {
-        if (thisDepth + 1 == SDEP)
-            return GridAnalyzer.eval(allInputs);
+        if (thisDepth + 1 == SDEP) {
+            return mSearch.isQuiescence() ? doQuiescence(forId, thisDepth, 0, alpha, beta, allInputs)
+                    : (GridAnalyzer.pieceCount(forId, allInputs) == 0) ? lossScore(forId, thisDepth)
+                    : GridAnalyzer.eval(allInputs);
+        }
+
+        /* Only the root is shuffled, as that is where ties are picked */
+        final List<GridChangeInput> inputs = GridAnalyzer.findAllInputs(forId, allInputs,
+                (thisDepth == 0) ? mTieBreaker : null);
+        if (inputs.isEmpty()) {
+            if (thisDepth == 0)
+                computeResult = null;
+            return lossScore(forId, thisDepth);
+        }
+
+        MoveOrdering.orderCapturesFirst(inputs);
 
         if (forId == 0) {
-            return doMaxInput(thisDepth, alpha, beta, GridAnalyzer.findAllInputs(forId, allInputs));
+            return doMaxInput(thisDepth, alpha, beta, inputs);
         } else {
-            return doMinInput(thisDepth, alpha, beta, GridAnalyzer.findAllInputs(forId, allInputs));
+            return doMinInput(thisDepth, alpha, beta, inputs);
+        }
+    }
+
+    /**
+     * Searches only the long moves that kill a pebble, until the state is
+     * quiet. The moving player may also stand pat on the eval.
+     *
+     * @param ply plies from the root
+     */
+    private int doQuiescence(int forId, int ply, int quiescenceDepth, int alpha, int beta,
+                             BoardMonoStateCache state) {
+        if (GridAnalyzer.pieceCount(forId, state) == 0)
+            return lossScore(forId, ply);// all pebbles lost, even at the cap
+
+        final int standPat = GridAnalyzer.eval(state);
+        if (quiescenceDepth == PermainanSearch.MAX_QUIESCENCE_PLIES)
+            return standPat;
+
+        final List<GridChangeInput> captures = GridAnalyzer.findAllCaptures(forId, state);
+        if (captures.isEmpty())
+            return standPat;
+
+        int bestScore = standPat;
+
+        for (GridChangeInput input : captures) {
+            if (forId == 0) {
+                if (bestScore >= beta)
+                    break;
+                alpha = Math.max(bestScore, alpha);
+                bestScore = Math.max(bestScore,
+                        doQuiescence(1, ply + 1, quiescenceDepth + 1, alpha, beta, input.mNewState));
+            } else {
+                if (bestScore <= alpha)
+                    break;
+                beta = Math.min(bestScore, beta);
+                bestScore = Math.min(bestScore,
+                        doQuiescence(0, ply + 1, quiescenceDepth + 1, alpha, beta, input.mNewState));
+            }
         }
+
+        return bestScore;
+    }
+
+    /**
+     * Scores the given player having lost, the given plies from the root,
+     * the way {@link PermainanSearch} does: sooner losses are worse.
+     */
+    private static int lossScore(int forId, int ply) {
+        final int score = PermainanSearch.WIN_SCORE - ply;
+        return (forId == 0) ? -score : score;
     }
 
     private int doMaxInput(int thisDepth, int alpha, int beta, List<GridChangeInput> allInputs) {
@@ -40,7 +499,11 @@ public class CompPermainanPlayer extends PermainanPlayer {
         int bestScore = INIT_ALPHA;
 
         for (GridChangeInput input : allInputs) {
-            final int inputScore = doBestInput(1, thisDepth + 1, alpha, beta, input.mNewState);
+            /* At the root, ties with bestScore must be exact scores to pick the
+               last best input, so the child is searched just below bestScore. */
+            final int childAlpha = (thisDepth == 0 && bestScore != INIT_ALPHA)
+                    ? bestScore - 1 : alpha;
+            final int inputScore = doBestInput(1, thisDepth + 1, childAlpha, beta, input.mNewState);
 
             if (inputScore >= bestScore) {
                 bestInput = input;
@@ -49,8 +512,8 @@ public class CompPermainanPlayer extends PermainanPlayer {
 
             alpha = Math.max(bestScore, alpha);
 
-//            if (alpha >= beta)
-//                break;
+            if (alpha >= beta)
+                break;
         }
 
         if (thisDepth == 0)
@@ -64,7 +527,9 @@ public class CompPermainanPlayer extends PermainanPlayer {
         int bestScore = INIT_BETA;
 
         for (GridChangeInput input : allInputs) {
-            final int inputScore = doBestInput(0, thisDepth + 1, alpha, beta, input.mNewState);
+            final int childBeta = (thisDepth == 0 && bestScore != INIT_BETA)
+                    ? bestScore + 1 : beta;
+            final int inputScore = doBestInput(0, thisDepth + 1, alpha, childBeta, input.mNewState);
 
             if (inputScore <= bestScore) {
                 bestInput = input;
@@ -73,8 +538,8 @@ public class CompPermainanPlayer extends PermainanPlayer {
 
             beta = Math.min(bestScore, beta);
 
-    //        if (alpha >= beta)
-  //              break;
+            if (alpha >= beta)
+                break;
         }
 
         if (thisDepth == 0)
@@ -87,17 +552,53 @@ public class CompPermainanPlayer extends PermainanPlayer {
     public void onTurn() {
         super.onTurn();
 
-        mWork.getPlatformProvider().runComputeIntensiveTaskAfter(200, BoardPlatformProvider.COMPUTER_TASK, new Runnable() {
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        mTurnCancelled = cancelled;
+
+        mWork.getPlatformProvider().runComputeIntensiveTaskAfter(inputDelay(200), BoardPlatformProvider.COMPUTER_TASK, new Runnable() {
                     @Override
                     public void run() {
+                        if (cancelled.get())
+                            return;
 
-                        doBestInput(mId, 0, INIT_ALPHA, INIT_BETA, BoardMonoStateCache.buildCache(mWork));
+                        stopPondering(true);
+
+                        final BoardMonoStateCache stateCache = BoardMonoStateCache.buildCache(mWork);
+                        final BitBoard position = BitBoard.fromCache(stateCache, mId);
+                        int knownMove = (mOpeningBook != null) ? mOpeningBook.pick(position, mTieBreaker) : 0;
+                        if (knownMove == 0 && mTablebase != null)
+                            knownMove = mTablebase.bestMove(position);
+                        GridChangeInput result;
+
+                        if (knownMove != 0) {
+                            result = MoveGenerator.toInput(knownMove, mId);
+                        } else if (mMakeUnmakeSearch) {
+                            mSearch.setStopFlag(cancelled);
+                            result = mSearch.findBestInput(position,
+                                    mSearchDepth, mTimeBudgetMillis, mNodeBudget);
+                        } else {
+                            doBestInput(mId, 0, INIT_ALPHA, INIT_BETA, stateCache);
+                            result = computeResult;
+                            computeResult = null;
+                        }
 
-                        GridChangeInput result = computeResult;
-                        computeResult = null;
                     /* List<GridChangeInput> myMoves = GridAnalyzer.findAllInputs(mId, stateCache);
                     GridChangeInput result = myMoves.get(0);
                     */
+                        if (cancelled.get())
+                            return;// the position has been restored meanwhile
+
+                        if (result == null) {
+                            resign();// pebbles left, but none can move
+                            return;
+                        }
+
+                        if (mMakeUnmakeSearch) {
+                            final int move = MoveGenerator.fromInput(result);
+                            position.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+                            startPondering(position);
+                        }
+
                         if (!result.mIsLongMove) {
                             inputController().placeMove(new PermainanGame.Move(true, result.mFromCell.row(),
                                     result.mFromCell.column(), result.mToCell.row(),
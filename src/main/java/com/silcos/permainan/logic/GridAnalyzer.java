@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 /**
  * Provides analysis utilities for the PermainanGrid.
@@ -71,15 +72,83 @@ public class GridAnalyzer {
         return eval;
     }
 
+    /**
+     * Evaluates the given position, exactly like
+     * {@link #eval(BoardMonoStateCache)} does for a state-cache. This
+     * scans the whole board; searches use the same evaluation kept updated
+     * by the board instead (see {@link PieceSquareTable#CLASSIC}).
+     *
+     * @param position
+     * @return
+     */
+    public static int eval(BitBoard position) {
+        int eval = 0;
+
+        for (int r = 0; r < 6; r++) {
+            for (int c = 0; c < 6; c++) {
+                final int playerId = position.playerAt(r, c);
+                if (playerId == -1)
+                    continue;
+
+                int rC = r < 3 ? r : 5 - r;
+                int cC = c < 3 ? c : 5 - c;
+                if (rC == cC) {
+                    eval += (playerId == 0) ? r : -r;
+                }
+
+                eval += ((playerId == 0) ? 10 : -10);
+            }
+        }
+
+        return eval;
+    }
+
+    /**
+     * Counts the pebbles of the given player left in the board state.
+     *
+     * @param playerId
+     * @param stateCache
+     * @return
+     */
+    public static int pieceCount(int playerId, BoardMonoStateCache stateCache) {
+        int count = 0;
+
+        for (int r = 0; r < 6; r++) {
+            for (int c = 0; c < 6; c++) {
+                final Piece piece = stateCache.pieceAt(r, c);
+                if (piece != null && piece.playerId() == playerId)
+                    ++count;
+            }
+        }
+
+        return count;
+    }
+
     /**
      * Finds all the possible inputs for the given board state, that can
-     * be provided by the given player (playerId).
+     * be provided by the given player (playerId), in the order they are
+     * generated.
      *
      * @param playerId player-id of the moving player
      * @param stateCache
      * @return
      */
     public static List<GridChangeInput> findAllInputs(int playerId, BoardMonoStateCache stateCache) {
+        return findAllInputs(playerId, stateCache, null);
+    }
+
+    /**
+     * Finds all the possible inputs for the given board state, that can
+     * be provided by the given player (playerId).
+     *
+     * @param playerId player-id of the moving player
+     * @param stateCache
+     * @param shuffler source of randomness to shuffle the inputs with; or
+     *      null to keep them in the order they were generated
+     * @return
+     */
+    public static List<GridChangeInput> findAllInputs(int playerId, BoardMonoStateCache stateCache,
+                                                      Random shuffler) {
         List<GridChangeInput> allInputs = new ArrayList<>();
 
         for (int r = 0; r < 6; r++) {
@@ -100,8 +169,135 @@ public class GridAnalyzer {
             }
         }
 
-        Collections.shuffle(allInputs);
+        if (shuffler != null)
+            Collections.shuffle(allInputs, shuffler);
         return allInputs;
     }
 
+    /**
+     * Finds all the possible inputs for the given position, that can
+     * be provided by the given player (playerId), in the order they are
+     * generated. The resulting positions are held in
+     * {@link GridChangeInput#mNewPosition}.
+     *
+     * @param playerId player-id of the moving player
+     * @param position
+     * @return
+     */
+    public static List<GridChangeInput> findAllInputs(int playerId, BitBoard position) {
+        return findAllInputs(playerId, position, true);
+    }
+
+    /**
+     * Finds all the possible inputs for the given position, that can
+     * be provided by the given player (playerId), in the order they are
+     * generated.
+     *
+     * @param playerId player-id of the moving player
+     * @param position
+     * @param buildsPositions whether the resulting position should be held
+     *      in {@link GridChangeInput#mNewPosition}; if false, the inputs are
+     *      meant to be applied with {@link BitBoard#makeMove(int, int)}
+     * @return
+     */
+    public static List<GridChangeInput> findAllInputs(int playerId, BitBoard position,
+                                                      boolean buildsPositions) {
+        return findAllInputs(playerId, position, buildsPositions, null);
+    }
+
+    /**
+     * Finds all the possible inputs for the given position, that can
+     * be provided by the given player (playerId).
+     *
+     * @param playerId player-id of the moving player
+     * @param position
+     * @param buildsPositions whether the resulting position should be held
+     *      in {@link GridChangeInput#mNewPosition}
+     * @param shuffler source of randomness to shuffle the inputs with; or
+     *      null to keep them in the order they were generated
+     * @return
+     */
+    public static List<GridChangeInput> findAllInputs(int playerId, BitBoard position,
+                                                      boolean buildsPositions, Random shuffler) {
+        List<GridChangeInput> allInputs = new ArrayList<>();
+        long pieces = position.pieces(playerId);
+
+        while (pieces != 0) {
+            final int cell = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+
+            final Loc2D loc = new CompactLoc2D(BitBoard.row(cell), BitBoard.column(cell));
+            allInputs.addAll(new MoveAnalyzer(position, loc, buildsPositions).findAllSimpleInputs());
+
+            final List<GridChangeInput>[] longMoveInputs =
+                    new LongMoveAnalyzer(position, loc, buildsPositions).findAllLongMoves();
+
+            for (List<GridChangeInput> longMoveInputInDir : longMoveInputs) {
+                allInputs.addAll(longMoveInputInDir);
+            }
+        }
+
+        if (shuffler != null)
+            Collections.shuffle(allInputs, shuffler);
+        return allInputs;
+    }
+
+    /**
+     * Finds the long moves of the given player that kill a pebble, as
+     * searched by quiescence.
+     *
+     * @param playerId player-id of the moving player
+     * @param stateCache
+     * @return
+     */
+    public static List<GridChangeInput> findAllCaptures(int playerId, BoardMonoStateCache stateCache) {
+        final List<GridChangeInput> allCaptures = new ArrayList<>();
+
+        for (int r = 0; r < 6; r++) {
+            for (int c = 0; c < 6; c++) {
+                final Piece p = stateCache.pieceAt(r, c);
+
+                if (p != null && p.playerId() == playerId) {
+                    addCaptures(new LongMoveAnalyzer(stateCache, new CompactLoc2D(r, c)).findAllLongMoves(),
+                            allCaptures);
+                }
+            }
+        }
+
+        return allCaptures;
+    }
+
+    /**
+     * Finds the long moves of the given player that kill a pebble, as
+     * searched by quiescence. The resulting positions are not built.
+     *
+     * @param playerId player-id of the moving player
+     * @param position
+     * @return
+     */
+    public static List<GridChangeInput> findAllCaptures(int playerId, BitBoard position) {
+        final List<GridChangeInput> allCaptures = new ArrayList<>();
+        long pieces = position.pieces(playerId);
+
+        while (pieces != 0) {
+            final int cell = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+
+            final Loc2D loc = new CompactLoc2D(BitBoard.row(cell), BitBoard.column(cell));
+            addCaptures(new LongMoveAnalyzer(position, loc, false).findAllLongMoves(), allCaptures);
+        }
+
+        return allCaptures;
+    }
+
+    private static void addCaptures(List<GridChangeInput>[] longMoveInputs,
+                                    List<GridChangeInput> allCaptures) {
+        for (List<GridChangeInput> longMoveInputInDir : longMoveInputs) {
+            for (GridChangeInput input : longMoveInputInDir) {
+                if (input.mOtherPebblesCleared > 0)
+                    allCaptures.add(input);
+            }
+        }
+    }
+
 }
@@ -18,6 +18,7 @@ public class GridChangeInput {
     public final Loc2D mFromCell;
     public final Loc2D mToCell;
     public final BoardMonoStateCache mNewState;
+    public final BitBoard mNewPosition;
 
     public List<GridChangeInput> playerNotes;
 
@@ -32,6 +33,21 @@ public class GridChangeInput {
         mFromCell = fromCell;
         mToCell = toCell;
         mNewState = newState;
+        mNewPosition = null;
+    }
+
+    public GridChangeInput(final int playerId, final boolean isLongMove, final int longMoveDir,
+                           final int otherPebblesCleared,
+                           final Loc2D fromCell, final Loc2D toCell,
+                           final BitBoard newPosition) {
+        mPlayerId = playerId;
+        mIsLongMove = isLongMove;
+        mLongMoveInitialDir = longMoveDir;
+        mOtherPebblesCleared = otherPebblesCleared;
+        mFromCell = fromCell;
+        mToCell = toCell;
+        mNewState = null;
+        mNewPosition = newPosition;
     }
 
     public boolean isMaxPlayer() {
@@ -1,6 +1,5 @@
 package com.silcos.permainan.logic;
 
-import com.silcos.board.Board;
 import com.silcos.board.BoardMonoStateCache;
 import com.silcos.board.CompactLoc2D;
 import com.silcos.board.Loc2D;
@@ -10,33 +9,22 @@ import com.silcos.board.Piece;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.silcos.board.Board.isCornerCell;
 import static com.silcos.permainan.logic.PermainanGrid.DOWN;
 import static com.silcos.permainan.logic.PermainanGrid.LEFT;
 import static com.silcos.permainan.logic.PermainanGrid.RIGHT;
 import static com.silcos.permainan.logic.PermainanGrid.UP;
-import static com.silcos.permainan.logic.PermainanGrid.cornerToLoopableCellDistance;
-import static com.silcos.permainan.logic.PermainanGrid.innerArcs;
-import static com.silcos.permainan.logic.PermainanGrid.outerArcs;
 
 public class LongMoveAnalyzer {
 
     private final BoardMonoStateCache mStateCache;
+    private final BitBoard mPosition;
     private final Loc2D mTargetLoc;
+    private final int mTargetCell;
     private final int mTargetPlayerId;
+    private final boolean mBuildsPositions;
 
     private List<BoardMonoStateCache> mAnalysisSteps[];
 
-    private boolean isVerticalEdge() {
-        final int col = mTargetLoc.column();
-        return (col == 0 || col == 5);
-    }
-
-    private boolean isHorizontalEdge() {
-        final int row = mTargetLoc.row();
-        return (row == 0 || row == 5);
-    }
-
     /**
      * Finds all the resulting long moves possible for this pebble
      * in the given dir.
@@ -50,10 +38,15 @@ public class LongMoveAnalyzer {
             return allSteps;
 
         final LongMoveTracer tracer = new LongMoveTracer(dir);
-        while (tracer.doStep() != null) {
+        while (tracer.doStep()) {
             final Loc2D result = tracer.curLoc();
-            allSteps.add(new GridChangeInput(mTargetPlayerId, true, dir, tracer.killCount(),
-                    mTargetLoc, result, tracer.mCurState));
+            if (mPosition != null) {
+                allSteps.add(new GridChangeInput(mTargetPlayerId, true, dir, tracer.killCount(),
+                        mTargetLoc, result, tracer.mCurPosition));
+            } else {
+                allSteps.add(new GridChangeInput(mTargetPlayerId, true, dir, tracer.killCount(),
+                        mTargetLoc, result, tracer.mCurState));
+            }
         }
 
         return allSteps;
@@ -61,8 +54,43 @@ public class LongMoveAnalyzer {
 
     public LongMoveAnalyzer(BoardMonoStateCache stateCache, Loc2D targetLoc) {
         mStateCache = stateCache;
+        mPosition = null;
         mTargetLoc = targetLoc;
+        mTargetCell = BitBoard.cell(targetLoc.row(), targetLoc.column());
         mTargetPlayerId = stateCache.pieceAt(targetLoc.row(), targetLoc.column()).playerId();
+        mBuildsPositions = false;
+    }
+
+    public LongMoveAnalyzer(BitBoard position, Loc2D targetLoc) {
+        this(position, targetLoc, true);
+    }
+
+    /**
+     * @param position
+     * @param targetLoc
+     * @param buildsPositions whether the resulting position should be built
+     *      for each step; searches that make & unmake moves on a single
+     *      BitBoard don't need them
+     */
+    public LongMoveAnalyzer(BitBoard position, Loc2D targetLoc, boolean buildsPositions) {
+        mStateCache = null;
+        mPosition = position;
+        mTargetLoc = targetLoc;
+        mTargetCell = BitBoard.cell(targetLoc.row(), targetLoc.column());
+        mTargetPlayerId = position.playerAt(mTargetCell);
+        mBuildsPositions = buildsPositions;
+    }
+
+    /**
+     * @return the id of the player holding the given cell in the analyzed
+     *      state, or -1 if it is empty
+     */
+    private int playerAt(int cell) {
+        if (mPosition != null)
+            return mPosition.playerAt(cell);
+
+        final Piece piece = mStateCache.pieceAt(BitBoard.row(cell), BitBoard.column(cell));
+        return (piece == null) ? -1 : piece.playerId();
     }
 
     /**
@@ -79,108 +107,28 @@ public class LongMoveAnalyzer {
      * @return
      */
     public boolean isLongMovePossible(int dir) {
-        int testRow = mTargetLoc.row();
-        int testCol = mTargetLoc.column();
-
-        if (Board.isCornerCell(testRow, testCol, 6, 6))
-            return false;// not allowed at any condition
-
-        int firstTransversalCount = 0;
-
-        switch (dir) {
-            case UP:
-                if (isVerticalEdge())
-                    return false;
+        if (dir < 0 || dir > 3)
+            throw new RuntimeException("Wrong dir: " + dir);
 
-                --testRow;
-                while (testRow >= 0) {
-                    if (mStateCache.pieceAt(testRow, testCol) != null)
-                        return false;
-                    ++firstTransversalCount;
-                    -- testRow;
-                }
-                ++testRow;
-                break;
-            case DOWN:
-                if (isVerticalEdge())
-                    return false;
-
-                ++testRow;
-                while (testRow < 6) {
-                    if (mStateCache.pieceAt(testRow, testCol) != null)
-                        return false;
-                    ++firstTransversalCount;
-                    ++testRow;
-                }
-                --testRow;
-                break;
-            case RIGHT:
-                if (isHorizontalEdge())
-                    return false;
-
-                ++testCol;
-                while (testCol < 6) {
-                    if (mStateCache.pieceAt(testRow, testCol) != null) {
-                        return false;
-                    }
+        final int[] path = CircuitTables.path(mTargetCell, dir);
+        if (path == null)
+            return false;// corner cell, or along an edge
 
-                    ++firstTransversalCount;
-                    ++testCol;
-                }
+        final int firstArc = CircuitTables.firstArcStep(mTargetCell, dir);
 
-                --testCol;
-                break;
-            case LEFT:
-                if (isHorizontalEdge())
+        if (mPosition != null) {
+            if ((mPosition.occupied() & CircuitTables.clearMask(mTargetCell, dir)) != 0)
+                return false;
+        } else {
+            for (int step = 0; step < firstArc; step++) {
+                if (playerAt(path[step]) != -1)
                     return false;
-
-                --testCol;
-                while (testCol >= 0) {
-                    if (mStateCache.pieceAt(testRow, testCol) != null)
-                        return false;
-                    ++firstTransversalCount;
-                    --testCol;
-                }
-                ++testCol;
-                break;
-            default:
-                throw new RuntimeException("Wrong dir: " + dir);
+            }
         }
 
         /* Here a move can only exist if the loop is allowed, as there are no
            steps in the same row/column.*/
-        if (firstTransversalCount == 0) {
-            final int cornerDistance = cornerToLoopableCellDistance(testRow, testCol);
-            long loopDes = -1;
-
-            if (cornerDistance == 1) {
-                for (PermainanGrid.RoundConnector rc : innerArcs) {
-                    if (rc.hasCoordinates(CompactLoc2D.encode(testRow, testCol))) {
-                        loopDes = rc.otherCoords(testRow, testCol);
-                        break;
-                    }
-                }
-            } else if (cornerDistance == 2) {
-                for (PermainanGrid.RoundConnector rc : outerArcs) {
-
-                    if (rc.hasCoordinates(CompactLoc2D.encode(testRow, testCol))) {
-                        loopDes = rc.otherCoords(testRow, testCol);
-                        break;
-                    }
-                }
-            } else {
-                throw new RuntimeException("Internal error: LongMoveAnalyer.isLongMovePossible() "
-                 + testRow + "," + testCol + "r" + cornerDistance);
-            }
-
-            Piece p = mStateCache.pieceAt(CompactLoc2D.decodeRow(loopDes),
-                    CompactLoc2D.decodeColumn(loopDes));
-            if (p != null && p.playerId() == mTargetPlayerId) {
-                return false;
-            }
-        }
-
-        return true;
+        return firstArc != 0 || playerAt(path[0]) != mTargetPlayerId;
     }
 
     public List<GridChangeInput>[] findAllLongMoves() {
@@ -193,134 +141,63 @@ public class LongMoveAnalyzer {
     }
 
     /**
-     * Traces each step of a long move, and counts how may pebbles are killed
-     * in each step. doStep() should be called until it returns null, after
-     * which it will start spitting incorrect moves (because the longest move
-     * ended already).
+     * Traces each step of a long move along the precomputed path in
+     * {@link CircuitTables}, and counts how may pebbles are killed in each
+     * step. doStep() should be called until it returns false, after which
+     * the longest move has ended.
      */
     private class LongMoveTracer {
 
-        private int mCurRow;
-        private int mCurCol;
-        private int mDir;
+        private final int[] mPath;
+        private int mStep = -1;
+        private int mCurCell;
         private int mKillCount = 0;
-        private boolean mPassedInit = false;
 
         private BoardMonoStateCache mCurState = mStateCache;
-
-        private boolean tryTransverse() {
-            final int oldRow = mCurRow;
-            final int oldCol = mCurCol;
-
-            switch (mDir) {
-                case UP:
-                    if (mCurRow == 0)
-                        return false;
-                    --mCurRow;
-                    break;
-                case DOWN:
-                    if (mCurRow == 5)
-                        return false;
-                    ++mCurRow;
-                    break;
-                case LEFT:
-                    if (mCurCol == 0)
-                        return false;
-                    --mCurCol;
-                    break;
-                case RIGHT:
-                    if (mCurCol == 5)
-                        return false;
-                    ++mCurCol;
-                    break;
-                default:
-                    throw new RuntimeException("Invalid dir: " + mDir);
-            }
-
-            mCurState = mCurState.doMove(
-                    new Move(true, oldRow, oldCol, mCurRow, mCurCol), 6, 6);
-            return true;
-        }
-
-        private Loc2D getResult() {
-            final Piece piece = mStateCache.pieceAt(mCurRow, mCurCol);
-            if (piece == null)
-                return curLoc();
-
-            /* Here we use mStateCache and not mCurState because, mCurState will be
-             * updated to the current move, but the opponent pebble will be in its
-             * original state in mStateCache.
-             */
-            if (piece.playerId() != mTargetPlayerId) {
-                ++mKillCount;
-                return curLoc();
-            }
-
-            return null;
-        }
+        private BitBoard mCurPosition = mPosition;
 
         LongMoveTracer(int dir) {
-            mCurRow = mTargetLoc.row();
-            mCurCol = mTargetLoc.column();
-            mDir = dir;
+            mPath = CircuitTables.path(mTargetCell, dir);
+            mCurCell = mTargetCell;
         }
 
         public Loc2D curLoc() {
-            return new CompactLoc2D(mCurRow, mCurCol);
+            return new CompactLoc2D(BitBoard.row(mCurCell), BitBoard.column(mCurCell));
         }
 
         public int killCount() {
             return mKillCount;
         }
 
-        public Loc2D doStep() {
-            if (mCurRow == mTargetLoc.row() &&
-                    mCurCol == mTargetLoc.column() &&
-                    mStateCache != mCurState) {
-                if (mPassedInit)
-                    return null;
-                mPassedInit = true;
-            } else if (mKillCount > 0) {
-                return null;// can't kill more than once
-            }
+        public boolean doStep() {
+            if (mKillCount > 0 || mStep + 1 == mPath.length)
+                return false;// can't kill more than once
 
-            if (tryTransverse()) {// doesn't loop, just move in mDir
-                return getResult();
-            }
+            final int nextCell = mPath[++mStep];
 
-            final CompactLoc2D curLoc = (CompactLoc2D) curLoc();
-            int cornerDistance = cornerDistance = PermainanGrid.cornerToLoopableCellDistance(mCurRow, mCurCol);
-            Loc2D otherLoc = null;
-            if (cornerDistance == 1) {
-                for (PermainanGrid.RoundConnector rc : innerArcs) {
-                    if (rc.hasCoordinates(curLoc.val())) {
-                        otherLoc = new CompactLoc2D(rc.otherCoords(mCurRow, mCurCol));
-                        mDir = PermainanGrid.longMoveAtLoopableCellDirection(otherLoc.row(), otherLoc.column());
-                        break;
-                    }
-                }
-            } else if (cornerDistance == 2) {
-                for (PermainanGrid.RoundConnector rc : outerArcs) {
-                    if (rc.hasCoordinates(curLoc.val())) {
-                        otherLoc = new CompactLoc2D(rc.otherCoords(mCurRow, mCurCol));
-                        mDir = PermainanGrid.longMoveAtLoopableCellDirection(otherLoc.row(), otherLoc.column());
-                        break;
-                    }
-                }
+            /* Here we use the analyzed state and not mCurState because, mCurState
+             * will be updated to the current move, but the opponent pebble will be
+             * in its original state in the analyzed state.
+             */
+            final int playerId = playerAt(nextCell);
+            if (playerId == mTargetPlayerId)
+                return false;
+            if (playerId != -1)
+                ++mKillCount;
+
+            if (mPosition != null) {
+                if (mBuildsPositions)
+                    mCurPosition = mCurPosition.doMove(mCurCell, nextCell);
             } else {
-                throw new RuntimeException("Reached corner cell, cannot proceed LongMoveTracer");
+                mCurState = mCurState.doMove(new Move(true, BitBoard.row(mCurCell),
+                        BitBoard.column(mCurCell), BitBoard.row(nextCell),
+                        BitBoard.column(nextCell)), 6, 6);
             }
 
-            final int oldRow = mCurRow;
-            final int oldCol = mCurCol;
-
-            mCurRow = otherLoc.row();
-            mCurCol = otherLoc.column();
-
-            mCurState = mCurState.doMove(new Move(true, oldRow, oldCol, mCurRow, mCurCol), 6, 6);
-            return getResult();
+            mCurCell = nextCell;
+            return true;
         }
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,143 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardGame;
+import com.silcos.board.BoardMonoStateCache;
+import com.silcos.board.BoardPlatformProvider;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link MctsPermainanPlayer} is a computer player choosing its inputs by
+ * Monte Carlo tree search (see {@link MctsSearch}), as an alternative to
+ * the alpha-beta search of {@link CompPermainanPlayer}. Its strength is
+ * set by the playouts (or time) it is given for each turn.
+ */
+public class MctsPermainanPlayer extends PermainanPlayer {
+
+    /**
+     * Default number of playouts of each turn.
+     */
+    public static final int DEFAULT_PLAYOUT_BUDGET = 20000;
+
+    private final MctsSearch mSearch = new MctsSearch();
+
+    /* Set when the turn being searched for is taken back */
+    private volatile AtomicBoolean mTurnCancelled;
+
+    public MctsPermainanPlayer(int id, BoardGame work,
+                               BoardGame.GameInputController inputController) {
+        super(work, inputController);
+        mId = id;
+        mSearch.setPlayoutBudget(DEFAULT_PLAYOUT_BUDGET);
+    }
+
+    public long getPlayoutBudget() {
+        return mSearch.getPlayoutBudget();
+    }
+
+    /**
+     * Sets the number of playouts of each turn.
+     *
+     * @param playouts playouts, or 0 for no limit (if there is a time one)
+     */
+    public void setPlayoutBudget(long playouts) {
+        mSearch.setPlayoutBudget(playouts);
+    }
+
+    public long getTimeBudget() {
+        return mSearch.getTimeBudget();
+    }
+
+    /**
+     * Sets the time each turn is searched for.
+     *
+     * @param millis time, or 0 for no limit (if there is a playout one)
+     */
+    public void setTimeBudget(long millis) {
+        mSearch.setTimeBudget(millis);
+    }
+
+    public int getThreadCount() {
+        return mSearch.getThreadCount();
+    }
+
+    /**
+     * Sets the number of threads each turn is searched on.
+     *
+     * @param threads
+     */
+    public void setThreadCount(int threads) {
+        mSearch.setThreadCount(threads);
+    }
+
+    public int getNodeCapacity() {
+        return mSearch.getNodeCapacity();
+    }
+
+    /**
+     * Sets the number of nodes of the search tree, each taking 28 bytes
+     * (see {@link MctsSearch#setNodeCapacity(int)}).
+     *
+     * @param nodeCapacity
+     */
+    public void setNodeCapacity(int nodeCapacity) {
+        mSearch.setNodeCapacity(nodeCapacity);
+    }
+
+    /**
+     * Seeds the playouts, so that games can be replayed (on one thread).
+     *
+     * @param seed
+     */
+    public void setRandomSeed(long seed) {
+        mSearch.setRandomSeed(seed);
+    }
+
+    @Override
+    public void cancelTurn() {
+        final AtomicBoolean cancelled = mTurnCancelled;
+        if (cancelled != null)
+            cancelled.set(true);
+    }
+
+    @Override
+    public void close() {
+        mSearch.close();
+    }
+
+    @Override
+    public void onTurn() {
+        super.onTurn();
+
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        mTurnCancelled = cancelled;
+
+        mWork.getPlatformProvider().runComputeIntensiveTaskAfter(inputDelay(200), BoardPlatformProvider.COMPUTER_TASK, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cancelled.get())
+                            return;
+
+                        final BitBoard position =
+                                BitBoard.fromCache(BoardMonoStateCache.buildCache(mWork), mId);
+                        mSearch.setStopFlag(cancelled);
+                        final GridChangeInput result = mSearch.findBestInput(position);
+
+                        if (cancelled.get())
+                            return;// the position has been restored meanwhile
+
+                        if (result == null) {
+                            resign();// pebbles left, but none can move
+                        } else if (!result.mIsLongMove) {
+                            inputController().placeMove(new PermainanGame.Move(true, result.mFromCell.row(),
+                                    result.mFromCell.column(), result.mToCell.row(),
+                                    result.mToCell.column(), false));
+                        } else {
+                            inputController().placeLongMove(result.mLongMoveInitialDir,
+                                    result.mFromCell.row(), result.mFromCell.column(),
+                                    result.mToCell.row(), result.mToCell.column());
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,451 @@
+package com.silcos.permainan.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MctsSearch} finds an input for a position by Monte Carlo tree
+ * search: it grows a tree from the root by UCT, i.e. picking the child that
+ * best balances its win rate against how little it has been tried, and
+ * scores each new leaf by a random playout to the end of the game. The input
+ * tried most often is returned, which is refined the longer the search runs.
+ *
+ * The tree lives in a node pool of fixed capacity, as parallel arrays; once
+ * the pool is full, the tree stops growing but playouts go on. The pool is
+ * allocated by the first search, so that a search never used takes no
+ * memory. Playouts are
+ * played on a {@link BitBoard} per thread with inputs generated by
+ * {@link MoveGenerator}, so they allocate nothing.
+ *
+ * With more than one thread (see {@link #setThreadCount(int)}), all threads
+ * grow the same tree. A thread descending through a node counts its visit
+ * before the playout's result is known, i.e. as a loss, so that the other
+ * threads are steered to other nodes meanwhile (virtual loss).
+ */
+public class MctsSearch {
+
+    /**
+     * Default number of nodes in the pool.
+     */
+    public static final int DEFAULT_NODE_CAPACITY = 1 << 18;
+
+    /**
+     * Plies after which a playout is scored by the evaluation, if no player
+     * has won yet.
+     */
+    public static final int MAX_PLAYOUT_PLIES = 200;
+
+    /* Weight of the exploration term of UCT */
+    private static final double EXPLORATION = 1.4;
+
+    /* Results are counted in half-points, for draws */
+    private static final int WIN = 2;
+    private static final int DRAW = 1;
+
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+
+    /* Node pool, or null until a search needs it; the root is node 0 */
+    private int mNodeCapacity;
+    private int[] mMoves;// input leading into the node
+    private int[] mParents;
+    private int[] mFirstChildren;
+    private int[] mChildCounts;
+    private AtomicIntegerArray mStates;
+    private AtomicIntegerArray mVisits;
+    private AtomicIntegerArray mResults;// for the player moving into the node
+    private final AtomicInteger mNodeCount = new AtomicInteger();
+
+    private long mPlayoutBudget = 10000;
+    private long mTimeBudgetMillis;
+    private Random mSeeds = new Random();// seeds the playouts of each search
+    private final AtomicLong mPlayoutCount = new AtomicLong();
+    private long mDeadline;
+    private AtomicBoolean mStopFlag;
+
+    private int mThreadCount = 1;
+    private volatile ForkJoinPool mPool;
+
+    public MctsSearch() {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * @param nodeCapacity number of nodes in the pool
+     */
+    public MctsSearch(int nodeCapacity) {
+        setNodeCapacity(nodeCapacity);
+    }
+
+    public int getNodeCapacity() {
+        return mNodeCapacity;
+    }
+
+    /**
+     * Sets the number of nodes in the pool, each taking 28 bytes. The pool
+     * is reallocated by the next search.
+     *
+     * @param nodeCapacity
+     */
+    public void setNodeCapacity(int nodeCapacity) {
+        if (nodeCapacity < 1) {
+            throw new IllegalArgumentException("Invalid node capacity: " + nodeCapacity);
+        }
+
+        mNodeCapacity = nodeCapacity;
+        releasePool();
+    }
+
+    private void allocatePool() {
+        mMoves = new int[mNodeCapacity];
+        mParents = new int[mNodeCapacity];
+        mFirstChildren = new int[mNodeCapacity];
+        mChildCounts = new int[mNodeCapacity];
+        mStates = new AtomicIntegerArray(mNodeCapacity);
+        mVisits = new AtomicIntegerArray(mNodeCapacity);
+        mResults = new AtomicIntegerArray(mNodeCapacity);
+    }
+
+    private void releasePool() {
+        mMoves = null;
+        mParents = null;
+        mFirstChildren = null;
+        mChildCounts = null;
+        mStates = null;
+        mVisits = null;
+        mResults = null;
+        mNodeCount.set(0);
+    }
+
+    public AtomicBoolean getStopFlag() {
+        return mStopFlag;
+    }
+
+    /**
+     * Sets a flag which stops the searches of this one when it is set,
+     * before their budget runs out; so they may find no input. The flag is
+     * checked before each playout & never cleared by the search.
+     *
+     * @param stopFlag flag, or null for none
+     */
+    public void setStopFlag(AtomicBoolean stopFlag) {
+        mStopFlag = stopFlag;
+    }
+
+    public long getPlayoutBudget() {
+        return mPlayoutBudget;
+    }
+
+    /**
+     * Sets the number of playouts after which the search stops.
+     *
+     * @param playouts playouts, or 0 for no limit (if there is a time one)
+     */
+    public void setPlayoutBudget(long playouts) {
+        if (playouts < 0) {
+            throw new IllegalArgumentException("Invalid playout budget: " + playouts);
+        }
+
+        mPlayoutBudget = playouts;
+    }
+
+    public long getTimeBudget() {
+        return mTimeBudgetMillis;
+    }
+
+    /**
+     * Sets the time after which the search stops.
+     *
+     * @param millis time, or 0 for no limit (if there is a playout one)
+     */
+    public void setTimeBudget(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Invalid time budget: " + millis + " ms");
+        }
+
+        mTimeBudgetMillis = millis;
+    }
+
+    /**
+     * Seeds the playouts, so that serial searches can be replayed. Each
+     * search draws its own seed from it, so that they don't repeat the
+     * same playouts.
+     *
+     * @param seed
+     */
+    public void setRandomSeed(long seed) {
+        mSeeds = new Random(seed);
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    /**
+     * Sets the number of threads searching concurrently. Threads other
+     * than the calling one are kept in a pool owned by this search, which
+     * is shut down when the count is set back to 1.
+     *
+     * @param threads
+     */
+    public void setThreadCount(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        if (threads == mThreadCount)
+            return;
+
+        if (mPool != null)
+            mPool.shutdown();
+
+        mPool = (threads > 1) ? new ForkJoinPool(threads - 1) : null;
+        mThreadCount = threads;
+    }
+
+    /**
+     * Shuts down the threads of this search. The search can still be used
+     * afterwards, on the calling thread only; one running meanwhile goes
+     * on with the threads it has started.
+     */
+    public void close() {
+        setThreadCount(1);
+    }
+
+    /**
+     * @return number of playouts of the last search, on all threads
+     */
+    public long playoutCount() {
+        return Math.min(mPlayoutCount.get(), (mPlayoutBudget > 0) ? mPlayoutBudget : Long.MAX_VALUE);
+    }
+
+    /**
+     * @return number of nodes of the tree grown by the last search
+     */
+    public int nodeCount() {
+        return Math.min(mNodeCount.get(), mNodeCapacity);
+    }
+
+    /**
+     * Searches the given position until the playout or time budget runs
+     * out.
+     *
+     * @param root position to be searched; it is not modified
+     * @return the input tried most often, or null if the side-to-move has
+     *      none
+     */
+    public GridChangeInput findBestInput(final BitBoard root) {
+        if (mPlayoutBudget == 0 && mTimeBudgetMillis == 0) {
+            throw new IllegalStateException("The search has no playout nor time budget");
+        }
+
+        if (mMoves == null)
+            allocatePool();
+
+        clearRoot();
+        mPlayoutCount.set(0);
+        mDeadline = (mTimeBudgetMillis > 0)
+                ? System.nanoTime() + mTimeBudgetMillis * 1000000L : Long.MAX_VALUE;
+
+        final long searchSeed = mSeeds.nextLong();
+        final ForkJoinPool pool = mPool;
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 1; pool != null && i < mThreadCount; i++) {
+            final long seed = searchSeed + i;
+
+            try {
+                tasks.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        searchOn(root, seed);
+                    }
+                }));
+            } catch (RejectedExecutionException e) {
+                break;// closed meanwhile
+            }
+        }
+
+        searchOn(root, searchSeed);
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        final int bestChild = mostVisitedChild(0);
+        return (bestChild == -1) ? null : MoveGenerator.toInput(mMoves[bestChild], root.sideToMove());
+    }
+
+    private void clearRoot() {
+        mNodeCount.set(1);
+        mParents[0] = -1;
+        mMoves[0] = 0;
+        mChildCounts[0] = 0;
+        mStates.set(0, UNEXPANDED);
+        mVisits.set(0, 0);
+        mResults.set(0, 0);
+    }
+
+    private int mostVisitedChild(int node) {
+        if (mStates.get(node) != EXPANDED)
+            return -1;
+
+        int best = -1;
+        for (int i = 0; i < mChildCounts[node]; i++) {
+            final int child = mFirstChildren[node] + i;
+            if (best == -1 || mVisits.get(child) > mVisits.get(best))
+                best = child;
+        }
+
+        return best;
+    }
+
+    /**
+     * Runs playouts on the calling thread, until the budget runs out.
+     */
+    private void searchOn(BitBoard root, long seed) {
+        final BitBoard board = new BitBoard(root);
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        final Random random = new Random(seed);
+        final AtomicBoolean stopFlag = mStopFlag;
+
+        while (true) {
+            final long playout = mPlayoutCount.incrementAndGet();
+            if ((mPlayoutBudget > 0 && playout > mPlayoutBudget) || System.nanoTime() >= mDeadline)
+                break;
+            if (stopFlag != null && stopFlag.get())
+                break;
+
+            board.set(root);
+            iterate(board, moves, random);
+        }
+    }
+
+    /**
+     * Descends from the root by UCT, expands the leaf reached, plays it out
+     * & backs its result up to the root.
+     */
+    private void iterate(BitBoard board, int[] moves, Random random) {
+        int node = 0;
+        mVisits.incrementAndGet(node);
+
+        while (true) {
+            int state = mStates.get(node);
+
+            if (state == UNEXPANDED && mStates.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                expand(node, board, moves);
+                state = EXPANDED;
+            }
+            if (state != EXPANDED || mChildCounts[node] == 0)
+                break;// a leaf: being expanded by another thread, or terminal
+
+            node = selectChild(node);
+            board.makeMove(MoveGenerator.from(mMoves[node]), MoveGenerator.to(mMoves[node]));
+            mVisits.incrementAndGet(node);// a loss until the result is known
+
+            if (mVisits.get(node) == 1)
+                break;// its first visit is played out
+        }
+
+        final int mover = 1 - board.sideToMove();
+        backUp(node, mover, playout(board, moves, random));
+    }
+
+    private void expand(int node, BitBoard board, int[] moves) {
+        final int count = (board.pieceCount(board.sideToMove()) == 0)
+                ? 0 : MoveGenerator.generate(board, moves, 0);
+        final int first = (count > 0 && mNodeCount.get() + count <= mMoves.length)
+                ? mNodeCount.getAndAdd(count) : mMoves.length;
+
+        if (first + count > mMoves.length) {
+            mStates.set(node, EXPANDING);// the pool is full; stays a leaf
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            final int child = first + i;
+            mMoves[child] = moves[i];
+            mParents[child] = node;
+            mChildCounts[child] = 0;
+            mStates.set(child, UNEXPANDED);
+            mVisits.set(child, 0);
+            mResults.set(child, 0);
+        }
+
+        mFirstChildren[node] = first;
+        mChildCounts[node] = count;
+        mStates.set(node, EXPANDED);// publishes the children
+    }
+
+    private int selectChild(int node) {
+        final double logVisits = Math.log(Math.max(1, mVisits.get(node)));
+        final int first = mFirstChildren[node];
+        int best = first;
+        double bestValue = Double.NEGATIVE_INFINITY;
+
+        for (int child = first; child < first + mChildCounts[node]; child++) {
+            final int visits = mVisits.get(child);
+            if (visits == 0)
+                return child;
+
+            final double value = mResults.get(child) / (double) (WIN * visits)
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Plays random inputs from the given position until a player has no
+     * pebble or no input left, killing whenever it can.
+     *
+     * @return the result for the player 0, in half-points
+     */
+    private static int playout(BitBoard board, int[] moves, Random random) {
+        for (int ply = 0; ply < MAX_PLAYOUT_PLIES; ply++) {
+            final int side = board.sideToMove();
+            final int count = (board.pieceCount(side) == 0) ? 0 : MoveGenerator.generate(board, moves, 0);
+
+            if (count == 0)
+                return (side == 0) ? 0 : WIN;
+
+            /* Kills are played if there are any, as a random input mostly isn't one */
+            int captures = 0;
+            for (int i = 0; i < count; i++) {
+                if (MoveGenerator.kills(moves[i]) != 0)
+                    moves[captures++] = moves[i];
+            }
+
+            final int move = moves[random.nextInt((captures > 0) ? captures : count)];
+            board.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+        }
+
+        final int eval = board.eval();
+        return (eval > 0) ? WIN : (eval < 0) ? 0 : DRAW;
+    }
+
+    /**
+     * Adds the result of a playout to the nodes from the given one up to
+     * the root, for the player moving into each.
+     *
+     * @param node
+     * @param mover player moving into the given node
+     * @param resultFor0
+     */
+    private void backUp(int node, int mover, int resultFor0) {
+        for (; node > 0; node = mParents[node], mover ^= 1) {
+            mResults.addAndGet(node, (mover == 0) ? resultFor0 : WIN - resultFor0);
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import com.silcos.board.BoardMonoStateCache;
 import com.silcos.board.CompactLoc2D;
 import com.silcos.board.Loc2D;
 import com.silcos.board.Move;
+import com.silcos.board.Piece;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,11 +16,57 @@ import java.util.List;
 public class MoveAnalyzer {
 
     private final BoardMonoStateCache mStateCache;
+    private final BitBoard mPosition;
     private final Loc2D mTargetLoc;
+    private final boolean mBuildsPositions;
 
     public MoveAnalyzer(BoardMonoStateCache stateCache, Loc2D targetLoc) {
         mStateCache = stateCache;
+        mPosition = null;
         mTargetLoc = targetLoc;
+        mBuildsPositions = false;
+    }
+
+    public MoveAnalyzer(BitBoard position, Loc2D targetLoc) {
+        this(position, targetLoc, true);
+    }
+
+    /**
+     * @param position
+     * @param targetLoc
+     * @param buildsPositions whether the resulting position should be built
+     *      for each input; searches that make & unmake moves on a single
+     *      BitBoard don't need them
+     */
+    public MoveAnalyzer(BitBoard position, Loc2D targetLoc, boolean buildsPositions) {
+        mStateCache = null;
+        mPosition = position;
+        mTargetLoc = targetLoc;
+        mBuildsPositions = buildsPositions;
+    }
+
+    private int playerAt(int row, int col) {
+        if (mPosition != null)
+            return mPosition.playerAt(row, col);
+
+        final Piece piece = mStateCache.pieceAt(row, col);
+        return (piece == null) ? -1 : piece.playerId();
+    }
+
+    private GridChangeInput newSimpleInput(int playerId, int newRow, int newCol) {
+        final int fromRow = mTargetLoc.row();
+        final int fromCol = mTargetLoc.column();
+        final CompactLoc2D toLoc = new CompactLoc2D(newRow, newCol);
+
+        if (mPosition != null) {
+            return new GridChangeInput(playerId, false, -1, 0, mTargetLoc, toLoc, !mBuildsPositions
+                    ? null : mPosition.doMove(BitBoard.cell(fromRow, fromCol), BitBoard.cell(newRow, newCol)));
+        }
+
+        return new GridChangeInput(playerId, false, -1, 0, mTargetLoc, toLoc,
+                mStateCache.doMove(
+                        new Move(false, fromRow, fromCol, newRow, newCol),
+                        6, 6));
     }
 
     /**
@@ -34,7 +81,7 @@ public class MoveAnalyzer {
 
         final int fromRow = mTargetLoc.row();
         final int fromCol = mTargetLoc.column();
-        final int playerId = mStateCache.pieceAt(fromRow, fromCol).playerId();
+        final int playerId = playerAt(fromRow, fromCol);
 
         for (int deltaRow = -1; deltaRow <= 1; deltaRow++) {
             final int newRow = fromRow + deltaRow;
@@ -46,14 +93,10 @@ public class MoveAnalyzer {
                 if (newCol < 0 || newCol >= 6)
                     continue;
 
-                if (mStateCache.pieceAt(newRow, newCol) != null)
+                if (playerAt(newRow, newCol) != -1)
                     continue;
 
-                final CompactLoc2D toLoc = new CompactLoc2D(newRow, newCol);
-                allSimpleInputs.add(new GridChangeInput(playerId, false, -1, 0, mTargetLoc, toLoc,
-                        mStateCache.doMove(
-                                new Move(false, fromRow, fromCol, newRow, newCol),
-                                6, 6)));
+                allSimpleInputs.add(newSimpleInput(playerId, newRow, newCol));
             }
         }
 
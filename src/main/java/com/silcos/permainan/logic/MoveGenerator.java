@@ -0,0 +1,294 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.CompactLoc2D;
+
+/**
+ * {@link MoveGenerator} generates the inputs of a {@link BitBoard} position
+ * without allocating anything: each input is packed into an int, & written
+ * into a buffer supplied by the caller. It generates the same inputs, in
+ * the same order, as
+ * {@link GridAnalyzer#findAllInputs(int, BitBoard, boolean, java.util.Random)}
+ * without a shuffler.
+ *
+ * A packed move holds, from the lowest bit up:
+ *
+ *     from cell (6) | to cell (6) | long move (1) | direction (2) | kill (1)
+ *
+ * as a long move kills at most one pebble. So a move fits in the 16 bits
+ * stored by the {@link TranspositionTable}, and 0 is never a move.
+ *
+ * Inputs can also be generated in stages (see {@link #CAPTURES},
+ * {@link #QUIET_LONG_MOVES} and {@link #SIMPLE_MOVES}), as picked by
+ * {@link MovePicker}.
+ */
+public final class MoveGenerator {
+
+    /**
+     * Number of moves a buffer must have room for, after the offset it is
+     * written at. This bounds the moves of a player with
+     * {@link BitBoard#MAX_PIECES} pebbles, which no BitBoard exceeds: 8
+     * simple moves & a long move to each cell of 4 paths, for each pebble.
+     */
+    public static final int MAX_MOVES = BitBoard.MAX_PIECES * 8
+            + BitBoard.MAX_PIECES * 4 * (CircuitTables.LOOP_LENGTH - 1);
+
+    /**
+     * Long moves that kill a pebble.
+     */
+    public static final int CAPTURES = 1;
+
+    /**
+     * Long moves that don't kill.
+     */
+    public static final int QUIET_LONG_MOVES = 2;
+
+    /**
+     * Moves to an adjacent cell, which never kill.
+     */
+    public static final int SIMPLE_MOVES = 4;
+
+    public static final int ALL_MOVES = CAPTURES | QUIET_LONG_MOVES | SIMPLE_MOVES;
+
+    private static final int CELL_MASK = 63;
+    private static final int KEY_MASK = (1 << 12) - 1;
+    private static final int TO_SHIFT = 6;
+    private static final int LONG_MOVE = 1 << 12;
+    private static final int DIR_SHIFT = 13;
+    private static final int KILL_SHIFT = 15;
+
+    /* Cells adjacent to each cell, including diagonally */
+    private static final long[] sNeighbours = new long[BitBoard.CELLS];
+
+    static {
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            final int row = BitBoard.row(cell);
+            final int col = BitBoard.column(cell);
+
+            for (int r = Math.max(0, row - 1); r <= Math.min(5, row + 1); r++) {
+                for (int c = Math.max(0, col - 1); c <= Math.min(5, col + 1); c++) {
+                    if (r != row || c != col)
+                        sNeighbours[cell] |= BitBoard.bit(BitBoard.cell(r, c));
+                }
+            }
+        }
+    }
+
+    public static int simpleMove(int from, int to) {
+        return from | (to << TO_SHIFT);
+    }
+
+    /**
+     * @param from
+     * @param to
+     * @param dir initial direction of the long move
+     * @param kills 1 if the long move kills a pebble, otherwise 0
+     * @return
+     */
+    public static int longMove(int from, int to, int dir, int kills) {
+        return from | (to << TO_SHIFT) | LONG_MOVE | (dir << DIR_SHIFT) | (kills << KILL_SHIFT);
+    }
+
+    public static int from(int move) {
+        return move & CELL_MASK;
+    }
+
+    public static int to(int move) {
+        return (move >>> TO_SHIFT) & CELL_MASK;
+    }
+
+    public static boolean isLongMove(int move) {
+        return (move & LONG_MOVE) != 0;
+    }
+
+    /**
+     * @return initial direction of a long move, or -1 for a simple move
+     */
+    public static int dir(int move) {
+        return isLongMove(move) ? (move >>> DIR_SHIFT) & 3 : -1;
+    }
+
+    /**
+     * @return number of pebbles killed by the move
+     */
+    public static int kills(int move) {
+        return (move >>> KILL_SHIFT) & 1;
+    }
+
+    /**
+     * @return the (from, to) key of the move, under which long moves
+     *      in different directions to the same cell are the same
+     */
+    public static int key(int move) {
+        return move & KEY_MASK;
+    }
+
+    /**
+     * Writes all the inputs of the side-to-move into the given buffer.
+     *
+     * @param position
+     * @param moves buffer with room for {@link #MAX_MOVES} after offset
+     * @param offset index at which the first move is written
+     * @return index after the last move written
+     */
+    public static int generate(BitBoard position, int[] moves, int offset) {
+        return generate(position, moves, offset, ALL_MOVES);
+    }
+
+    /**
+     * Writes the long moves of the side-to-move that kill a pebble into the
+     * given buffer, as searched by quiescence.
+     *
+     * @param position
+     * @param moves buffer with room for {@link #MAX_MOVES} after offset
+     * @param offset index at which the first move is written
+     * @return index after the last move written
+     */
+    public static int generateCaptures(BitBoard position, int[] moves, int offset) {
+        return generate(position, moves, offset, CAPTURES);
+    }
+
+    /**
+     * Writes some kinds of inputs of the side-to-move into the given
+     * buffer; for each pebble, its simple moves before its long moves.
+     *
+     * @param position
+     * @param moves buffer with room for {@link #MAX_MOVES} after offset
+     * @param count index at which the first move is written
+     * @param kinds CAPTURES, QUIET_LONG_MOVES and/or SIMPLE_MOVES
+     * @return index after the last move written
+     */
+    public static int generate(BitBoard position, int[] moves, int count, int kinds) {
+        final long own = position.pieces(position.sideToMove());
+        final long occupied = position.occupied();
+        long pieces = own;
+
+        while (pieces != 0) {
+            final int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+
+            if ((kinds & SIMPLE_MOVES) != 0) {
+                long targets = sNeighbours[from] & ~occupied;
+
+                while (targets != 0) {
+                    moves[count++] = simpleMove(from, Long.numberOfTrailingZeros(targets));
+                    targets &= targets - 1;
+                }
+            }
+
+            if ((kinds & (CAPTURES | QUIET_LONG_MOVES)) != 0)
+                count = generateLongMoves(from, own, occupied, kinds, moves, count);
+        }
+
+        return count;
+    }
+
+    /**
+     * Traces the long moves of a pebble like {@link LongMoveAnalyzer} does:
+     * the cells up to the edge must be empty, and every following step is a
+     * move until an own pebble is reached or after a pebble is killed.
+     */
+    private static int generateLongMoves(int from, long own, long occupied, int kinds,
+                                         int[] moves, int count) {
+        /* In the order of LongMoveAnalyzer#findAllLongMoves(), indexed by dir */
+        for (int dir = 0; dir < 4; dir++) {
+            final int[] path = CircuitTables.path(from, dir);
+            if (path == null || (occupied & CircuitTables.clearMask(from, dir)) != 0)
+                continue;
+
+            for (int cell : path) {
+                final long bit = BitBoard.bit(cell);
+
+                if ((own & bit) != 0)
+                    break;
+                if ((occupied & bit) != 0) {
+                    if ((kinds & CAPTURES) != 0)
+                        moves[count++] = longMove(from, cell, dir, 1);
+                    break;// can't kill more than once
+                }
+                if ((kinds & QUIET_LONG_MOVES) != 0)
+                    moves[count++] = longMove(from, cell, dir, 0);
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Checks whether a packed move is one of the inputs of the side-to-move,
+     * without generating them. Moves from the transposition table or from
+     * sibling nodes are checked so before being searched.
+     *
+     * @param position
+     * @param move
+     * @return
+     */
+    public static boolean isValid(BitBoard position, int move) {
+        final long own = position.pieces(position.sideToMove());
+        final long occupied = position.occupied();
+        final int from = from(move);
+        final int to = to(move);
+
+        if ((own & BitBoard.bit(from)) == 0)
+            return false;
+
+        if (!isLongMove(move)) {
+            return move == simpleMove(from, to) &&
+                    (sNeighbours[from] & ~occupied & BitBoard.bit(to)) != 0;
+        }
+
+        final int dir = dir(move);
+        final int[] path = CircuitTables.path(from, dir);
+        if (path == null || (occupied & CircuitTables.clearMask(from, dir)) != 0)
+            return false;
+
+        for (int cell : path) {
+            final long bit = BitBoard.bit(cell);
+
+            if ((own & bit) != 0)
+                return false;
+            if ((occupied & bit) != 0)
+                return move == longMove(from, to, dir, 1) && cell == to;
+            if (cell == to)
+                return move == longMove(from, to, dir, 0);
+        }
+
+        return false;
+    }
+
+    /**
+     * Unpacks a move into a {@link GridChangeInput}, without building its
+     * resulting position.
+     *
+     * @param move
+     * @param playerId id of the player providing the input
+     * @return
+     */
+    public static GridChangeInput toInput(int move, int playerId) {
+        final int from = from(move);
+        final int to = to(move);
+
+        return new GridChangeInput(playerId, isLongMove(move), dir(move), kills(move),
+                new CompactLoc2D(BitBoard.row(from), BitBoard.column(from)),
+                new CompactLoc2D(BitBoard.row(to), BitBoard.column(to)), (BitBoard) null);
+    }
+
+    /**
+     * Packs a {@link GridChangeInput}, the inverse of
+     * {@link #toInput(int, int)}.
+     *
+     * @param input
+     * @return
+     */
+    public static int fromInput(GridChangeInput input) {
+        final int from = BitBoard.cell(input.mFromCell.row(), input.mFromCell.column());
+        final int to = BitBoard.cell(input.mToCell.row(), input.mToCell.column());
+
+        return input.mIsLongMove
+                ? longMove(from, to, input.mLongMoveInitialDir, (input.mOtherPebblesCleared > 0) ? 1 : 0)
+                : simpleMove(from, to);
+    }
+
+    private MoveGenerator() {
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.silcos.permainan.logic;
+
+import java.util.List;
+
+/**
+ * {@link MoveOrdering} holds what a search learns about which inputs are
+ * likely to cause a cutoff, as used by {@link MovePicker}:
+ *
+ * - the killer inputs of each ply, i.e. quiet inputs that recently caused
+ *   a cutoff in a sibling node
+ * - the history heuristic: how often, & how deep, each (from, to) input
+ *   has caused a cutoff in the search
+ *
+ * The killer & history tables learn from the search they are used in, so
+ * each search (and each of its threads) should have its own instance.
+ */
+public class MoveOrdering {
+
+    /* History scores are halved when one reaches this */
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    /**
+     * Added to the rank of a quiet move of a pebble in danger, putting it
+     * before all the quiet moves ranked by history only.
+     */
+    static final int ESCAPE_RANK = HISTORY_LIMIT;
+
+    static final int KILLERS_PER_PLY = 2;
+
+    private final int[][] mKillers = new int[PermainanSearch.MAX_DEPTH + 1][KILLERS_PER_PLY];
+    private final int[][] mHistory = new int[2][1 << 12];
+    private boolean mEscapesFirst;
+
+    /**
+     * Prepares the tables for a new search: the killers are forgotten, as
+     * they belong to the plies of the last search, while the history is
+     * aged so that newer cutoffs weigh more.
+     */
+    public void newSearch() {
+        for (int[] killers : mKillers) {
+            for (int i = 0; i < KILLERS_PER_PLY; i++) {
+                killers[i] = 0;
+            }
+        }
+
+        ageHistory();
+    }
+
+    private void ageHistory() {
+        for (int[] history : mHistory) {
+            for (int i = 0; i < history.length; i++) {
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    private static boolean isCapture(GridChangeInput input) {
+        return input.mOtherPebblesCleared > 0;
+    }
+
+    /**
+     * @param ply distance of the node from the root
+     * @param index 0 for the latest killer, 1 for the one before
+     * @return a killer move of the ply (see {@link MoveGenerator}), or 0
+     */
+    public int killer(int ply, int index) {
+        return mKillers[ply][index];
+    }
+
+    /**
+     * @param side id of the player providing the move
+     * @param move
+     * @return history score of the (from, to) key of the move
+     */
+    public int history(int side, int move) {
+        return mHistory[side][MoveGenerator.key(move)];
+    }
+
+    public boolean isEscapesFirst() {
+        return mEscapesFirst;
+    }
+
+    /**
+     * Sets whether quiet moves of pebbles in danger are picked before the
+     * other quiet moves (see {@link MovePicker}). This costs a
+     * {@link ThreatMap} update per node, so it is off unless set.
+     *
+     * @param escapesFirst
+     */
+    public void setEscapesFirst(boolean escapesFirst) {
+        mEscapesFirst = escapesFirst;
+    }
+
+    /**
+     * Learns from a move that caused a beta cutoff. Captures are already
+     * searched early, so only quiet moves are remembered.
+     *
+     * @param move
+     * @param side id of the player that provided the move
+     * @param ply distance of the node from the root
+     * @param depth remaining depth of the node
+     */
+    public void onCutoff(int move, int side, int ply, int depth) {
+        if (MoveGenerator.kills(move) > 0)
+            return;
+
+        final int[] killers = mKillers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+
+        final int moveKey = MoveGenerator.key(move);
+
+        final int[] history = mHistory[side];
+        history[moveKey] += depth * depth;
+        if (history[moveKey] >= HISTORY_LIMIT)
+            ageHistory();
+    }
+
+    /**
+     * Moves the long moves that kill a pebble before the other inputs,
+     * keeping the order within each group. This needs no learning, so it
+     * can order searches that must not depend on earlier ones.
+     *
+     * @param inputs
+     */
+    public static void orderCapturesFirst(List<GridChangeInput> inputs) {
+        int captures = 0;
+
+        for (int i = 0; i < inputs.size(); i++) {
+            if (isCapture(inputs.get(i))) {
+                inputs.add(captures++, inputs.remove(i));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.silcos.permainan.logic;
+
+/**
+ * {@link MovePicker} hands out the moves of a node one at a time, and
+ * generates them lazily in stages, so that the moves of later stages are
+ * never generated if an earlier one causes a cutoff:
+ *
+ * 1. the best move stored in the transposition table, if it is valid
+ * 2. long moves that kill a pebble, in the order they are generated
+ * 3. the killer moves of the ply (see {@link MoveOrdering}), if valid
+ * 4. long moves that don't kill, by their history score
+ * 5. simple moves, by their history score
+ *
+ * If set so by {@link MoveOrdering#setEscapesFirst(boolean)}, moves of a
+ * pebble that is in danger (see {@link ThreatMap}) are picked first in the
+ * last two stages.
+ *
+ * Moves handed out by an earlier stage are skipped in the later ones. Moves
+ * are packed as by {@link MoveGenerator}, and the resulting position is only
+ * built when the search makes a move.
+ *
+ * A picker is reused for every node at the same ply of a search.
+ */
+public class MovePicker {
+
+    private static final int TABLE_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int CAPTURES = 2;
+    private static final int KILLERS = 3;
+    private static final int GENERATE_QUIET_LONG_MOVES = 4;
+    private static final int QUIET_LONG_MOVES = 5;
+    private static final int GENERATE_SIMPLE_MOVES = 6;
+    private static final int SIMPLE_MOVES = 7;
+    private static final int GENERATE_ALL_MOVES = 8;
+    private static final int ALL_MOVES = 9;
+    private static final int DONE = 10;
+
+    private final MoveOrdering mOrdering;
+    private final int[] mMoves = new int[MoveGenerator.MAX_MOVES];
+    private final int[] mRanks = new int[MoveGenerator.MAX_MOVES];
+    private final ThreatMap mThreats = new ThreatMap();
+    private long mInDanger;
+
+    private BitBoard mPosition;
+    private int mPly;
+    private int mStage;
+    private boolean mCapturesOnly;
+    private int mCount;
+    private int mIndex;
+
+    /* Moves handed out before their stage, which are then skipped */
+    private int mTableMove;
+    private int mKiller0;
+    private int mKiller1;
+    private int mKillerIndex;
+
+    /**
+     * @param ordering killer & history tables of the search
+     */
+    public MovePicker(MoveOrdering ordering) {
+        mOrdering = ordering;
+    }
+
+    /**
+     * Starts picking the moves of a node.
+     *
+     * @param position position of the node, which must not change until
+     *      the last move is picked (moves are made & unmade in between)
+     * @param ply distance of the node from the root
+     * @param tableMove best move of the node in the transposition table,
+     *      or 0
+     * @param ordered whether the moves are picked in stages; otherwise all
+     *      of them are handed out in the order they are generated
+     */
+    public void reset(BitBoard position, int ply, int tableMove, boolean ordered) {
+        mPosition = position;
+        mPly = ply;
+        mStage = ordered ? TABLE_MOVE : GENERATE_ALL_MOVES;
+        mCapturesOnly = false;
+        mTableMove = 0;
+        mKiller0 = 0;
+        mKiller1 = 0;
+        mKillerIndex = 0;
+
+        if (ordered && tableMove != 0 && MoveGenerator.isValid(position, tableMove))
+            mTableMove = tableMove;
+    }
+
+    /**
+     * Starts picking only the long moves that kill a pebble, as searched by
+     * quiescence.
+     *
+     * @param position
+     */
+    public void resetCaptures(BitBoard position) {
+        reset(position, 0, 0, true);
+        mStage = GENERATE_CAPTURES;
+        mCapturesOnly = true;
+    }
+
+    /**
+     * @return the next move, or 0 if all the moves have been picked
+     */
+    public int next() {
+        while (true) {
+            switch (mStage) {
+                case TABLE_MOVE:
+                    mStage = GENERATE_CAPTURES;
+                    if (mTableMove != 0)
+                        return mTableMove;
+                    break;
+                case GENERATE_CAPTURES:
+                    generate(MoveGenerator.CAPTURES, false);
+                    mStage = CAPTURES;
+                    break;
+                case CAPTURES:
+                    while (mIndex < mCount) {
+                        final int move = mMoves[mIndex++];
+                        if (move != mTableMove)
+                            return move;
+                    }
+                    mStage = mCapturesOnly ? DONE : KILLERS;
+                    break;
+                case KILLERS: {
+                    final int move = nextKiller();
+                    if (move != 0)
+                        return move;
+                    mStage = GENERATE_QUIET_LONG_MOVES;
+                    break;
+                }
+                case GENERATE_QUIET_LONG_MOVES:
+                    mInDanger = 0;
+                    if (mOrdering.isEscapesFirst()) {
+                        mThreats.update(mPosition);
+                        mInDanger = mThreats.inDanger(mPosition.sideToMove());
+                    }
+                    generate(MoveGenerator.QUIET_LONG_MOVES, true);
+                    mStage = QUIET_LONG_MOVES;
+                    break;
+                case QUIET_LONG_MOVES: {
+                    final int move = nextByHistory();
+                    if (move != 0)
+                        return move;
+                    mStage = GENERATE_SIMPLE_MOVES;
+                    break;
+                }
+                case GENERATE_SIMPLE_MOVES:
+                    generate(MoveGenerator.SIMPLE_MOVES, true);
+                    mStage = SIMPLE_MOVES;
+                    break;
+                case SIMPLE_MOVES: {
+                    final int move = nextByHistory();
+                    if (move != 0)
+                        return move;
+                    mStage = DONE;
+                    break;
+                }
+                case GENERATE_ALL_MOVES:
+                    generate(MoveGenerator.ALL_MOVES, false);
+                    mStage = ALL_MOVES;
+                    break;
+                case ALL_MOVES:
+                    if (mIndex < mCount)
+                        return mMoves[mIndex++];
+                    mStage = DONE;
+                    break;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private void generate(int kinds, boolean ranked) {
+        mCount = MoveGenerator.generate(mPosition, mMoves, 0, kinds);
+        mIndex = 0;
+
+        if (ranked) {
+            final int side = mPosition.sideToMove();
+            for (int i = 0; i < mCount; i++) {
+                mRanks[i] = mOrdering.history(side, mMoves[i]);
+                if ((mInDanger & BitBoard.bit(MoveGenerator.from(mMoves[i]))) != 0)
+                    mRanks[i] += MoveOrdering.ESCAPE_RANK;
+            }
+        }
+    }
+
+    private int nextKiller() {
+        while (mKillerIndex < MoveOrdering.KILLERS_PER_PLY) {
+            final int move = mOrdering.killer(mPly, mKillerIndex++);
+
+            if (move != 0 && move != mTableMove && MoveGenerator.isValid(mPosition, move)) {
+                if (mKiller0 == 0) {
+                    mKiller0 = move;
+                } else {
+                    mKiller1 = move;
+                }
+                return move;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Picks the remaining move with the highest history score, skipping the
+     * moves already handed out.
+     */
+    private int nextByHistory() {
+        while (mIndex < mCount) {
+            int best = mIndex;
+
+            for (int i = mIndex + 1; i < mCount; i++) {
+                if (mRanks[i] > mRanks[best])
+                    best = i;
+            }
+
+            final int move = mMoves[best];
+            mMoves[best] = mMoves[mIndex];
+            mRanks[best] = mRanks[mIndex];
+            ++mIndex;
+
+            if (move != mTableMove && move != mKiller0 && move != mKiller1)
+                return move;
+        }
+
+        return 0;
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.silcos.permainan.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * {@link OpeningBook} reads an opening book written by
+ * {@link OpeningBookBuilder}: inputs known to be good in the positions
+ * that games commonly start with. The file is memory-mapped & read-only,
+ * so it can be shared by all the computer players of a process.
+ *
+ * The book is a sorted array of entries, each holding the Zobrist hash of
+ * a position (see {@link BitBoard#hash()}), an input packed as by
+ * {@link MoveGenerator} & the weight of the input, i.e. how often it was
+ * played. A position has one entry per input, and is found by a binary
+ * search over the hashes.
+ */
+public final class OpeningBook {
+
+    /* "PBK1" */
+    static final int MAGIC = 0x50424B31;
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * Size, in bytes, of each entry: hash (8) | move (2) | weight (2).
+     */
+    static final int ENTRY_SIZE = 12;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mEntryCount;
+
+    private OpeningBook(MappedByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a Permainan opening book");
+        }
+
+        mEntryCount = buffer.getInt(4);
+        if (mEntryCount < 0 || buffer.capacity() != HEADER_SIZE + (long) mEntryCount * ENTRY_SIZE) {
+            throw new IllegalArgumentException("Corrupt opening book of " + mEntryCount + " entries");
+        }
+
+        mBuffer = buffer;
+    }
+
+    /**
+     * Memory-maps the given opening book file.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read
+     */
+    public static OpeningBook open(File file) throws IOException {
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            final FileChannel channel = input.getChannel();
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();// the mapping stays valid
+        }
+    }
+
+    /**
+     * @return number of (position, input) entries in the book
+     */
+    public int size() {
+        return mEntryCount;
+    }
+
+    /**
+     * Picks a book input for the given position.
+     *
+     * @param position
+     * @param random picks between the inputs of the position in proportion
+     *      to their weights; or null to pick the heaviest one
+     * @return the input, packed as by {@link MoveGenerator}; or 0 if the
+     *      position is not in the book
+     */
+    public int pick(BitBoard position, Random random) {
+        final long key = position.hash();
+        int first = firstEntry(key);
+        int totalWeight = 0;
+        int last = first;
+
+        /* Skip inputs that don't fit the position, from a clash of hashes */
+        for (; last < mEntryCount && keyAt(last) == key; last++) {
+            if (MoveGenerator.isValid(position, moveAt(last)))
+                totalWeight += weightAt(last);
+        }
+
+        if (totalWeight == 0)
+            return 0;
+
+        int target = (random != null) ? random.nextInt(totalWeight) : 0;
+        int bestMove = 0;
+        int bestWeight = 0;
+
+        for (; first < last; first++) {
+            final int move = moveAt(first);
+            final int weight = weightAt(first);
+            if (weight == 0 || !MoveGenerator.isValid(position, move))
+                continue;
+
+            if (random != null) {
+                target -= weight;
+                if (target < 0)
+                    return move;
+            } else if (weight > bestWeight) {
+                bestWeight = weight;
+                bestMove = move;
+            }
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * @return index of the first entry with the given key, or of the first
+     *      one with a greater key if there is none
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = mEntryCount;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (keyAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private long keyAt(int entry) {
+        return mBuffer.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+    }
+
+    private int moveAt(int entry) {
+        return mBuffer.getShort(HEADER_SIZE + entry * ENTRY_SIZE + 8) & 0xFFFF;
+    }
+
+    private int weightAt(int entry) {
+        return mBuffer.getShort(HEADER_SIZE + entry * ENTRY_SIZE + 10) & 0xFFFF;
+    }
+
+}
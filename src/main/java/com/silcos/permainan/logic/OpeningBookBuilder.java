@@ -0,0 +1,145 @@
+package com.silcos.permainan.logic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link OpeningBookBuilder} collects the inputs played in the first plies
+ * of games, and writes them into a file read by {@link OpeningBook}. The
+ * inputs can be added one by one (e.g. from the analysis of a position),
+ * or collected from games the engine plays against itself. It can be run
+ * from the command line:
+ *
+ *     OpeningBookBuilder [file] [games] [plies] [depth]
+ *
+ * which writes the book of that many self-play games from the initial
+ * position, each searched to the given depth for the given plies.
+ */
+public final class OpeningBookBuilder {
+
+    private static final int DEFAULT_GAMES = 200;
+    private static final int DEFAULT_PLIES = 8;
+    private static final int DEFAULT_DEPTH = 4;
+
+    private static final int MAX_WEIGHT = 0xFFFF;
+
+    /* Weight of each input, by the hash of its position */
+    private final Map<Long, Map<Integer, Integer>> mEntries = new HashMap<>();
+    private int mEntryCount;
+
+    public static void main(String[] args) throws IOException {
+        final File file = new File((args.length > 0) ? args[0] : "permainan.book");
+        final int games = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_GAMES;
+        final int plies = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_PLIES;
+        final int depth = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_DEPTH;
+
+        final long start = System.nanoTime();
+        final OpeningBookBuilder builder = new OpeningBookBuilder();
+        builder.addSelfPlay(BitBoard.initialPosition(), games, plies, depth, 0);
+        builder.write(file);
+
+        System.out.println("Wrote " + builder.size() + " entries into " + file + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * @return number of (position, input) entries collected
+     */
+    public int size() {
+        return mEntryCount;
+    }
+
+    /**
+     * Adds an input to the book, or adds to its weight if it is there.
+     *
+     * @param position position the input is played in
+     * @param move input, packed as by {@link MoveGenerator}
+     * @param weight
+     */
+    public void add(BitBoard position, int move, int weight) {
+        if (!MoveGenerator.isValid(position, move)) {
+            throw new IllegalArgumentException("Invalid input " + move + " in " + position.toNotation());
+        }
+
+        Map<Integer, Integer> moves = mEntries.get(position.hash());
+        if (moves == null) {
+            moves = new HashMap<>();
+            mEntries.put(position.hash(), moves);
+        }
+
+        final Integer oldWeight = moves.get(move);
+        if (oldWeight == null)
+            ++mEntryCount;
+
+        moves.put(move, Math.min(MAX_WEIGHT, weight + ((oldWeight != null) ? oldWeight : 0)));
+    }
+
+    /**
+     * Plays games of the engine against itself from the given position,
+     * adding each input played to the book. The games differ by the ties
+     * broken randomly in their searches.
+     *
+     * @param start position every game starts from
+     * @param games number of games
+     * @param plies number of inputs played in each game
+     * @param depth depth each input is searched to
+     * @param seed seed of the first game, incremented for each next one
+     */
+    public void addSelfPlay(BitBoard start, int games, int plies, int depth, long seed) {
+        final PermainanSearch search =
+                new PermainanSearch(new TranspositionTable(CompPermainanPlayer.DEFAULT_TABLE_SIZE_MB));
+
+        for (int game = 0; game < games; game++) {
+            final BitBoard position = new BitBoard(start);
+            search.setRandomSeed(seed + game);
+
+            for (int ply = 0; ply < plies; ply++) {
+                final GridChangeInput input = search.findBestInput(position, depth);
+                if (input == null)
+                    break;
+
+                final int move = MoveGenerator.fromInput(input);
+                add(position, move, 1);
+                position.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+            }
+        }
+    }
+
+    /**
+     * Writes the book into the given file, which is replaced if it exists.
+     *
+     * @param file
+     * @throws IOException if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        final List<Long> keys = new ArrayList<>(mEntries.keySet());
+        Collections.sort(keys);// as OpeningBook searches them
+
+        final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try {
+            output.writeInt(OpeningBook.MAGIC);
+            output.writeInt(mEntryCount);
+
+            for (Long key : keys) {
+                for (Map.Entry<Integer, Integer> entry : mEntries.get(key).entrySet()) {
+                    output.writeLong(key);
+                    output.writeShort(entry.getKey());
+                    output.writeShort(entry.getValue());
+                }
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardMonoStateCache;
+
+import java.util.List;
+
+/**
+ * {@link Perft} walks the tree of all inputs to a fixed depth and counts
+ * its leaves, to measure & verify the input generators
+ * ({@link MoveGenerator}, {@link GridAnalyzer#findAllInputs},
+ * {@link MoveAnalyzer} and {@link LongMoveAnalyzer}). Every generated
+ * input is counted, including long moves in different directions that
+ * stop on the same cell.
+ *
+ * It can be run from the command line:
+ *
+ *     Perft [depth] [position notation]
+ *
+ * which searches the initial position if no position is given (see
+ * {@link BitBoard#toNotation()}), by {@link MoveGenerator} & by
+ * {@link GridAnalyzer#findAllInputs}; each with its own rate.
+ */
+public final class Perft {
+
+    /**
+     * Counts of a perft run. The inputs of the last ply are also split by
+     * kind; captures are the long moves that kill a pebble.
+     */
+    public static final class Result {
+
+        public long mNodes;
+        public long mSimpleMoves;
+        public long mLongMoves;
+        public long mCaptures;
+
+        void add(Result other) {
+            mNodes += other.mNodes;
+            mSimpleMoves += other.mSimpleMoves;
+            mLongMoves += other.mLongMoves;
+            mCaptures += other.mCaptures;
+        }
+
+        void count(boolean isLongMove, int kills) {
+            ++mNodes;
+
+            if (!isLongMove) {
+                ++mSimpleMoves;
+            } else {
+                ++mLongMoves;
+                if (kills > 0)
+                    ++mCaptures;
+            }
+        }
+
+        /**
+         * @return whether both runs counted the same
+         */
+        public boolean matches(Result other) {
+            return mNodes == other.mNodes && mSimpleMoves == other.mSimpleMoves
+                    && mLongMoves == other.mLongMoves && mCaptures == other.mCaptures;
+        }
+
+        @Override
+        public String toString() {
+            return "nodes: " + mNodes + ", simple moves: " + mSimpleMoves
+                    + ", long moves: " + mLongMoves + ", captures: " + mCaptures;
+        }
+
+    }
+
+    public static void main(String[] args) {
+        final int depth = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        final BitBoard position;
+
+        if (args.length > 1) {
+            final StringBuilder notation = new StringBuilder(args[1]);
+            for (int i = 2; i < args.length; i++) {
+                notation.append(' ').append(args[i]);
+            }
+            position = BitBoard.parse(notation.toString());
+        } else {
+            position = BitBoard.initialPosition();
+        }
+
+        System.out.println(position);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            final Result result = perft(position, d);
+            printRate("perft(" + d + ")", result, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            final Result byInputs = perftByInputs(position, d);
+            printRate("perftByInputs(" + d + ")", byInputs, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Prints the counts of one generator with its own rate, as the
+     * generators run at very different speeds.
+     */
+    private static void printRate(String name, Result result, long elapsedNanos) {
+        final long elapsed = Math.max(1, elapsedNanos);
+
+        System.out.println(name + " " + result + " in " + elapsed / 1000000 + " ms, "
+                + result.mNodes * 1000000000L / elapsed + " nodes/s");
+    }
+
+    /**
+     * Counts the leaves of the given position to the given depth, making
+     * & unmaking the moves of {@link MoveGenerator} on a single
+     * {@link BitBoard}; which allocates nothing per node.
+     *
+     * @param position position to start from; it is not modified
+     * @param depth
+     * @return
+     */
+    public static Result perft(BitBoard position, int depth) {
+        final Result result = new Result();
+
+        if (depth == 0) {
+            result.mNodes = 1;
+        } else {
+            perft(new BitBoard(position), depth, new int[depth][MoveGenerator.MAX_MOVES], result);
+        }
+
+        return result;
+    }
+
+    private static void perft(BitBoard board, int depth, int[][] moveBuffers, Result result) {
+        final int[] moves = moveBuffers[depth - 1];
+        final int count = MoveGenerator.generate(board, moves, 0);
+
+        if (depth == 1) {
+            for (int i = 0; i < count; i++) {
+                result.count(MoveGenerator.isLongMove(moves[i]), MoveGenerator.kills(moves[i]));
+            }
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            final int undo = board.makeMove(MoveGenerator.from(moves[i]), MoveGenerator.to(moves[i]));
+            perft(board, depth - 1, moveBuffers, result);
+            board.unmakeMove(undo);
+        }
+    }
+
+    /**
+     * Counts the leaves of the given position to the given depth, by the
+     * inputs of {@link GridAnalyzer#findAllInputs(int, BitBoard, boolean, java.util.Random)}.
+     * This must match {@link #perft(BitBoard, int)}.
+     *
+     * @param position position to start from; it is not modified
+     * @param depth
+     * @return
+     */
+    public static Result perftByInputs(BitBoard position, int depth) {
+        final Result result = new Result();
+
+        if (depth == 0) {
+            result.mNodes = 1;
+        } else {
+            perftByInputs(new BitBoard(position), depth, result);
+        }
+
+        return result;
+    }
+
+    private static void perftByInputs(BitBoard board, int depth, Result result) {
+        final List<GridChangeInput> allInputs =
+                GridAnalyzer.findAllInputs(board.sideToMove(), board, false, null);
+
+        if (depth == 1) {
+            for (GridChangeInput input : allInputs) {
+                result.count(input.mIsLongMove, input.mOtherPebblesCleared);
+            }
+            return;
+        }
+
+        for (GridChangeInput input : allInputs) {
+            final int undo = board.makeMove(
+                    BitBoard.cell(input.mFromCell.row(), input.mFromCell.column()),
+                    BitBoard.cell(input.mToCell.row(), input.mToCell.column()));
+            perftByInputs(board, depth - 1, result);
+            board.unmakeMove(undo);
+        }
+    }
+
+    /**
+     * Counts the leaves of the given board state to the given depth, by
+     * the generator on state-caches. This must match
+     * {@link #perft(BitBoard, int)} for the same position.
+     *
+     * @param stateCache
+     * @param sideToMove
+     * @param depth
+     * @return
+     */
+    public static Result perft(BoardMonoStateCache stateCache, int sideToMove, int depth) {
+        final Result result = new Result();
+
+        if (depth == 0) {
+            result.mNodes = 1;
+            return result;
+        }
+
+        for (GridChangeInput input : GridAnalyzer.findAllInputs(sideToMove, stateCache, null)) {
+            if (depth == 1) {
+                result.count(input.mIsLongMove, input.mOtherPebblesCleared);
+            } else {
+                result.add(perft(input.mNewState, 1 - sideToMove, depth - 1));
+            }
+        }
+
+        return result;
+    }
+
+    private Perft() {
+    }
+
+}
@@ -11,7 +11,9 @@ import com.silcos.board.FinishEvent;
 import com.silcos.board.Piece;
 import com.silcos.board.Player;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 import static com.silcos.board.BoardPlatformProvider.COMPUTER_TASK;
 import static com.silcos.permainan.logic.LongMoveStateChangeEvent.LMSC_ENDED;
@@ -21,6 +23,18 @@ public class PermainanGame extends BoardGame {
 
     public static final String NAME = "Permainan";
 
+    /**
+     * Engine of computer players searching by alpha-beta, i.e.
+     * {@link CompPermainanPlayer}.
+     */
+    public static final int ENGINE_ALPHA_BETA = 0;
+
+    /**
+     * Engine of computer players searching by Monte Carlo tree search, i.e.
+     * {@link MctsPermainanPlayer}.
+     */
+    public static final int ENGINE_MCTS = 1;
+
     public static class Move extends com.silcos.board.Move {
 
         /* for capturing moves around the arc */
@@ -62,6 +76,12 @@ public class PermainanGame extends BoardGame {
 
     private LongMover mLongMoveState;
 
+    /* Whether long moves are done at once, without animation delays */
+    private boolean mHeadless;
+
+    /* Whether networked long moves are replayed locally, not step by step */
+    private boolean mReplaysLongMoves;
+
     private void dispatchLongMoveStateChangeEvent(int changeId, LongMover previousState) {
         dispatchEvent(new LongMoveStateChangeEvent(changeId, previousState, this));
     }
@@ -106,6 +126,68 @@ public class PermainanGame extends BoardGame {
         return true;
     }
 
+    /**
+     * @return the current position of the board, with the current
+     *      player to move
+     */
+    public BitBoard position() {
+        return BitBoard.fromGrid(board(), playerRotator.getCurrentId());
+    }
+
+    /**
+     * @return the Zobrist hash of the current position (see {@link Zobrist}),
+     *      equal to that of {@link #position()}
+     */
+    public long positionHash() {
+        return ((InputController) mController).mPositionHash;
+    }
+
+    /**
+     * Hints at the pebbles the given player may lose on the next turn.
+     *
+     * @param playerId
+     * @return mask of the cells (see {@link BitBoard}) holding a pebble of
+     *      the given player that the other player can kill by a long move
+     */
+    public long piecesInDanger(int playerId) {
+        return new ThreatMap(position()).inDanger(playerId);
+    }
+
+    public boolean isHeadless() {
+        return mHeadless;
+    }
+
+    /**
+     * Sets whether this game is played without a UI, e.g. between computer
+     * players on a server. A headless game does a long move with all its
+     * steps as soon as it is placed, instead of one step after each
+     * animation delay; the same events are dispatched in the same order.
+     * Computer players also place their inputs without waiting.
+     *
+     * @param headless
+     */
+    public void setHeadless(boolean headless) {
+        mHeadless = headless;
+    }
+
+    public boolean isReplayingLongMoves() {
+        return mReplaysLongMoves;
+    }
+
+    /**
+     * Sets whether the long moves of a networked game are sent as a single
+     * message (start cell, direction & stop cell) once they end, and
+     * replayed locally by the receiving peer (see
+     * {@link PermainanModulator#encodeLongMoveTask(int, int, int, int, int)}).
+     * Otherwise, which is the default, each step waits for the network to
+     * confirm it. Both peers must agree on this.
+     *
+     * @param replaysLongMoves
+     */
+    public void setReplayingLongMoves(boolean replaysLongMoves) {
+        mReplaysLongMoves = replaysLongMoves;
+    }
+
     public LongMover longMoveState() {
         return mLongMoveState;
     }
@@ -147,6 +229,7 @@ public class PermainanGame extends BoardGame {
         // Place pebbles
         p1.initAfterGame();
         p2.initAfterGame();
+        extractController(game).resetPositionHash();
         game.mPlayerStats[0] = game.new PlayerStats(p1);
         game.mPlayerStats[1] = game.new PlayerStats(p2);
         game.dispatchPlayerWiringEvent();
@@ -167,11 +250,26 @@ public class PermainanGame extends BoardGame {
 
     public static PermainanGame newCompBased(PermainanGame game, BoardEventListener eventListener,
                                              boolean comp1, boolean comp2) {
+        return newCompBased(game, eventListener, comp1, comp2, ENGINE_ALPHA_BETA);
+    }
+
+    /**
+     * Starts a game in which the players flagged are played by the computer,
+     * with the given engine.
+     *
+     * @param engine {@link #ENGINE_ALPHA_BETA} or {@link #ENGINE_MCTS}
+     */
+    public static PermainanGame newCompBased(PermainanGame game, BoardEventListener eventListener,
+                                             boolean comp1, boolean comp2, int engine) {
+        if (engine != ENGINE_ALPHA_BETA && engine != ENGINE_MCTS) {
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+
         final GameInputController inputController = extractController(game);
 
-        final PermainanPlayer playerI = comp1 ? new CompPermainanPlayer(0, game, inputController)
+        final PermainanPlayer playerI = comp1 ? newCompPlayer(engine, 0, game, inputController)
                                             : new HumanPermainanPlayer(0, game, inputController);
-        final PermainanPlayer playerII = comp2 ? new CompPermainanPlayer(1, game, inputController)
+        final PermainanPlayer playerII = comp2 ? newCompPlayer(engine, 1, game, inputController)
                                             : new HumanPermainanPlayer(1, game, inputController);
         game.addBoardEventListener(eventListener);
 
@@ -181,28 +279,50 @@ public class PermainanGame extends BoardGame {
         return game;
     }
 
+    private static PermainanPlayer newCompPlayer(int engine, int id, PermainanGame game,
+                                                 GameInputController inputController) {
+        return (engine == ENGINE_MCTS) ? new MctsPermainanPlayer(id, game, inputController)
+                : new CompPermainanPlayer(id, game, inputController);
+    }
+
     public static boolean xFlag = false;
 
     public class InputController extends GameInputController {
 
-        private ArrayList<BoardMonoStateCache> mBoardStateHistory = new ArrayList<>();
+        private final BoardStateHistory mBoardStateHistory = new BoardStateHistory();
         private boolean mAddedLongMoveToHistory;
+        private long mPositionHash;
+
+        /**
+         * Recomputes the position hash from the pebbles on the board. It is
+         * updated incrementally afterwards, on each move & turn switch.
+         */
+        void resetPositionHash() {
+            mPositionHash = Zobrist.hash(position());
+        }
+
+        /**
+         * Adds the current board-state to the history, e.g. when the game
+         * starts.
+         */
+        private void updateBoardStateHistory() {
+            mBoardStateHistory.addState(PermainanGame.this);
+        }
 
         /**
          * Updates the board-state history to conform to the newest move. If
          * a long move is under-process, the latest board-state is instead
          * modified to maintain even-odd order of player moves.
          */
-        private void updateBoardStateHistory() {
+        private void updateBoardStateHistory(final int srcRow, final int srcCol,
+                                             final int dstRow, final int dstCol) {
             if (!isLongMoveActive() || !mAddedLongMoveToHistory) {
                 if(isLongMoveActive())
                     mAddedLongMoveToHistory = true;
-                mBoardStateHistory.add(
-                        BoardMonoStateCache.buildCache(PermainanGame.this));
+                mBoardStateHistory.addMove(PermainanGame.this,
+                        BitBoard.cell(srcRow, srcCol), BitBoard.cell(dstRow, dstCol));
             } else {
-                mBoardStateHistory.set(
-                        mBoardStateHistory.size() - 1,
-                        BoardMonoStateCache.buildCache(PermainanGame.this));
+                mBoardStateHistory.extendLastMove(PermainanGame.this, BitBoard.cell(dstRow, dstCol));
             }
         }
 
@@ -215,6 +335,13 @@ public class PermainanGame extends BoardGame {
             return mBoardStateHistory.size();
         }
 
+        /**
+         * Rebuilds the board-state after the given move, from the nearest
+         * keyframe of the history before it (see {@link BoardStateHistory}).
+         *
+         * @param moveNo
+         * @return
+         */
         public BoardMonoStateCache getStateAtMove(int moveNo) {
             return mBoardStateHistory.get(moveNo);
         }
@@ -231,6 +358,13 @@ public class PermainanGame extends BoardGame {
             ));
         }
 
+        private void notifyInputPlaced(int playerId) {
+            for (int id = 0; id < mPlayers.length; id++) {
+                if (mPlayers[id] != null)
+                    getPlayer(id).onInputPlaced(playerId);
+            }
+        }
+
         @Override
         public boolean placeMove(final com.silcos.board.Move yourMove_) {
             if (isDead())
@@ -255,10 +389,17 @@ public class PermainanGame extends BoardGame {
             if(!mBoard.handle(yourMove))
                 return false;
 
-            if (!yourMove.isLongMoveStep())
+            if (!yourMove.isLongMoveStep()) {
                 history.add(yourMove);
+                notifyInputPlaced(srcHolder.playerId());
+            }
 
-            updateBoardStateHistory();
+            mPositionHash ^= Zobrist.moveKey(srcHolder.playerId(), BitBoard.cell(srcRow, srcCol),
+                    BitBoard.cell(dstRow, dstCol));
+            if (dstHolder != null)
+                mPositionHash ^= Zobrist.pieceKey(dstHolder.playerId(), BitBoard.cell(dstRow, dstCol));
+
+            updateBoardStateHistory(srcRow, srcCol, dstRow, dstCol);
 
             if(dstHolder != null) {
                 getPlayerStat(dstHolder.playerId())
@@ -278,22 +419,19 @@ public class PermainanGame extends BoardGame {
                 if (mLongMoveState.mRepeatOnNetworkConfirm)
                     return true;
 
+                if (mHeadless)
+                    return true;// placeLongMove() does the next step
+
                 getPlatformProvider().runComputeIntensiveTaskAfter(yourMove.mLoopHinted ? 800 : 500,
                         COMPUTER_TASK,
                         new Runnable() {
                             @Override
                             public void run() {
-                                if(!mLongMoveState.doStep()) {
-                                    final LongMover state = mLongMoveState;
-                                    mLongMoveState = null;
-                                    board().longMoveTrigger = false;
-                                    switchPlayer();
-                                    mAddedLongMoveToHistory = false;
-                                    dispatchLongMoveStateChangeEvent(LMSC_ENDED, state);
-                                }
+                                doLongMoveStep();
                             }
                         });
             } else {
+                mPositionHash ^= Zobrist.SIDE_TO_MOVE;
                 playerRotator.nextPlayer().onTurn();
                 if (timer != null)
                     timer.switchTo(playerRotator.getCurrentId());
@@ -302,6 +440,21 @@ public class PermainanGame extends BoardGame {
             return true;
         }
 
+        /**
+         * Does the next step of the long move under-process, ending it if
+         * there is none.
+         */
+        private void doLongMoveStep() {
+            if(!mLongMoveState.doStep()) {
+                final LongMover state = mLongMoveState;
+                mLongMoveState = null;
+                board().longMoveTrigger = false;
+                switchPlayer();
+                mAddedLongMoveToHistory = false;
+                dispatchLongMoveStateChangeEvent(LMSC_ENDED, state);
+            }
+        }
+
         public LongMover longMover() {
             return mLongMoveState;
         }
@@ -343,20 +496,117 @@ public class PermainanGame extends BoardGame {
 
             board().longMoveTrigger = true;
 
-            mLongMoveState.mRepeatOnNetworkConfirm =
+            mLongMoveState.mRepeatOnNetworkConfirm = !mReplaysLongMoves &&
                     ((PermainanPlayer) playerRotator.previousPlayer()).isNetworked;
 
             history.add(new Move(row, col, row, col, false));
+            notifyInputPlaced(playerRotator.getCurrentId());
             dispatchLongMoveStateChangeEvent(LMSC_STARTED, null);
-            if (!mLongMoveState.mRepeatOnNetworkConfirm)
-                mLongMoveState.doStep();
             if (timer != null)
                 timer.pause();
+            if (!mLongMoveState.mRepeatOnNetworkConfirm) {
+                mLongMoveState.doStep();
+
+                /* The steps of a headless game aren't animated, so they're all done now */
+                while (mHeadless && mLongMoveState != null && !isDead())
+                    doLongMoveStep();
+            }
             return true;
         }
 
+        /**
+         * @return the game this controller places inputs into
+         */
+        public PermainanGame game() {
+            return PermainanGame.this;
+        }
+
+        /**
+         * Replaces the pebbles on the board & the player to move by the given
+         * position, e.g. by a snapshot of the game of a networked peer this
+         * one is out of sync with. The pebbles on the board are placed first,
+         * so that killed ones come back only if the position has more; the
+         * others are counted as killed, and the board-state history goes on
+         * from the position. The turns given out are taken back, and the
+         * player to move is given a new one.
+         *
+         * @param position
+         */
+        public void restorePosition(BitBoard position) {
+            if (isLongMoveActive()) {
+                throw new IllegalStateException("Can't restore a position during a long move");
+            }
+
+            final Piece[][] pieces = new Piece[mPlayers.length][];
+            for (int id = 0; id < mPlayers.length; id++) {
+                pieces[id] = piecesOnBoardFirst(id);
+            }
+
+            position.applyTo(board(), pieces[0], pieces[1]);
+
+            for (int id = 0; id < mPlayers.length; id++) {
+                final PlayerStats stats = new PlayerStats(mPlayers[id]);
+
+                for (int i = position.pieceCount(id); i < pieces[id].length; i++) {
+                    stats.onKilled(pieces[id][i]);
+                }
+                mPlayerStats[id] = stats;
+                getPlayer(id).cancelTurn();
+            }
+
+            updateBoardStateHistory();
+            for (int id = 0; id < mPlayers.length; id++) {
+                if (position.pieceCount(id) == 0) {
+                    onPlayerLostAllPieces(id);
+                    return;
+                }
+            }
+
+            if (position.sideToMove() != playerRotator.getCurrentId())
+                playerRotator.nextPlayer();
+
+            resetPositionHash();
+            mAddedLongMoveToHistory = false;
+            getPlayer(playerRotator.getCurrentId()).onTurn();
+
+            if (timer != null)
+                timer.switchTo(playerRotator.getCurrentId());
+        }
+
+        /**
+         * @param playerId
+         * @return the pebbles of the given player, with those on the board
+         *      before the killed ones
+         */
+        private Piece[] piecesOnBoardFirst(int playerId) {
+            final Piece[] pieces = getPlayer(playerId).pieces();
+            final Set<Piece> onBoard = Collections.newSetFromMap(new IdentityHashMap<Piece, Boolean>());
+
+            for (int r = 0; r < 6; r++) {
+                for (int c = 0; c < 6; c++) {
+                    final Piece p = pieceAt(r, c);
+                    if (p != null && p.playerId() == playerId)
+                        onBoard.add(p);
+                }
+            }
+
+            final Piece[] ordered = new Piece[pieces.length];
+            int next = 0;
+            for (Piece piece : pieces) {
+                if (onBoard.contains(piece))
+                    ordered[next++] = piece;
+            }
+            for (Piece piece : pieces) {
+                if (!onBoard.contains(piece))
+                    ordered[next++] = piece;
+            }
+
+            return ordered;
+        }
+
         public void switchPlayer() {
             mAddedLongMoveToHistory = false;
+            mPositionHash ^= Zobrist.SIDE_TO_MOVE;
             playerRotator.nextPlayer().onTurn();
 
             if (timer != null)
@@ -365,11 +615,32 @@ public class PermainanGame extends BoardGame {
     }
 
     public void dispatchEvent(Event e) {
-        if (e.typeId() == ELIMINATION_EVENT)
+        if (e.typeId() == ELIMINATION_EVENT) {
             isDead = true;
+            closePlayers();
+        }
         super.dispatchEvent(e);
     }
 
+    /**
+     * Stops the game, releasing the threads of its computer players.
+     */
+    @Override
+    public void stopGame() {
+        super.stopGame();
+        closePlayers();
+    }
+
+    private void closePlayers() {
+        if (mPlayers == null)
+            return;
+
+        for (int id = 0; id < mPlayers.length; id++) {
+            if (mPlayers[id] != null)
+                getPlayer(id).close();
+        }
+    }
+
     /**
      * LongMover holds the current state of a in-process long-move. It
      * requires help from {@link InputController} to be called again
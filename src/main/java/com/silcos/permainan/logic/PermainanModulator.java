@@ -3,13 +3,88 @@ package com.silcos.permainan.logic;
 import com.silcos.board.BoardGame;
 import com.silcos.board.Modulator;
 
+/**
+ * {@link PermainanModulator} encodes the inputs of the local player into
+ * messages for the remote peer, and delivers the inputs decoded from the
+ * peer's messages to the networked player standing for it.
+ *
+ * Messages have two formats. The string format is human-readable, e.g.
+ * "2 3 3 4" for a move or "LD 1 2" for a long move. The binary format packs
+ * a message into at most {@link #MAX_BINARY_LENGTH} bytes, written into &
+ * read from a caller's buffer so that no object is allocated:
+ *
+ *     type (4 bits) | sequence (12 bits) | payload (0-2 bytes)
+ *
+ * where the sequence is the low 12 bits of {@link #mMoveSoph} after the
+ * message is counted, and the payload packs rows, columns & directions
+ * into nibbles: (row | column) of the source & (row | column) of the
+ * destination of a move or step, or (row | column) & (0 | direction) of a
+ * long move. Both peers must use the same format.
+ *
+ * A long move is sent either as its start, each of its steps & its end; or,
+ * if the game replays long moves (see
+ * {@link PermainanGame#setReplayingLongMoves(boolean)}), as a single
+ * message with its start, direction & stop cell once it has ended, e.g.
+ * "LD 1 2 4 2", or a binary {@link #MSG_WHOLE_LONG_MOVE} with a payload of
+ * (row | column), (0 | direction) & (stop row | stop column).
+ *
+ * To catch the peers going out of sync, the sender can follow every
+ * {@link #setCheckpointInterval(int) N-th} message with a checkpoint
+ * holding the Zobrist hash of its position, e.g. "H 1f3a..." or a binary
+ * {@link #MSG_CHECKPOINT} with the 8-byte hash. A receiver whose position
+ * hashes otherwise is {@link #isDesynced() desynced}; it then sends a
+ * resync request ("Q"), and the peer answers with a snapshot of its
+ * position, i.e. "S " & its notation (see {@link BitBoard#toNotation()}),
+ * or a binary {@link #MSG_SNAPSHOT} with the 36-bit pebble masks of both
+ * players in 5 bytes each, the side-to-move in the top nibble of the
+ * first. The receiver restores the snapshot, instead of replaying the
+ * game. Checkpoints, requests & snapshots are not counted in
+ * {@link #mMoveSoph}.
+ *
+ * The receiver of binary messages also checks their sequence: each counted
+ * message must follow the last one, and the others must carry its number.
+ * A message repeating an earlier one is dropped, and one arriving after a
+ * gap leaves the receiver desynced, as the moves missed can't be replayed.
+ * So does a message whose payload is off the grid, which is dropped too.
+ */
 public class PermainanModulator implements Modulator<String> {
 
+    /**
+     * Types of binary messages.
+     */
+    public static final int MSG_MOVE = 1;
+    public static final int MSG_LONG_MOVE = 2;
+    public static final int MSG_LONG_MOVE_STEP = 3;
+    public static final int MSG_LONG_MOVE_END = 4;
+    public static final int MSG_RESIGN = 5;
+    public static final int MSG_WHOLE_LONG_MOVE = 6;
+    public static final int MSG_CHECKPOINT = 7;
+    public static final int MSG_RESYNC_REQUEST = 8;
+    public static final int MSG_SNAPSHOT = 9;
+
+    /**
+     * Most bytes of a binary message.
+     */
+    public static final int MAX_BINARY_LENGTH = 12;
+
+    private static final int MASK_LENGTH = 5;
+
+    private static final int HEADER_LENGTH = 2;
+    static final int SEQUENCE_MASK = 0xFFF;
+
     protected PermainanPlayer mNetworkedPlayer;
     protected boolean mInLongMoveSync = false;
 
     public int mMoveSoph;
 
+    /* Sequence of the last counted binary message decoded */
+    private int mReceivedSequence;
+
+    /* Messages between checkpoints, or 0 for none */
+    private int mCheckpointInterval;
+    private boolean mDesynced;
+    private boolean mResyncRequested;
+
     public PermainanModulator() {
     }
 
@@ -34,19 +109,97 @@ public class PermainanModulator implements Modulator<String> {
             default: throw new IllegalArgumentException("Invalid direction: " + dir);
         }
 
-        final String[] locs = inputMessage.substring(3).split(" ");// LL x x
+        final String[] locs = inputMessage.substring(3).split(" ");// LL x x [y y]
 
-        if (locs.length != 2) {
+        if (locs.length != 2 && locs.length != 4) {
             throw new IllegalArgumentException("Invalid long move message recieved - " +
-                    "the number of locs isn't 2.");
+                    "the number of locs isn't 2 or 4.");
         }
 
         final int srcRow = Integer.valueOf(locs[0]);
         final int srcCol = Integer.valueOf(locs[1]);
 
+        if (locs.length == 4) {
+            decodeWholeLongMove(dirInNum, srcRow, srcCol, Integer.valueOf(locs[2]), Integer.valueOf(locs[3]));
+            return;
+        }
+
         mNetworkedPlayer.deliverLongMove(dirInNum, srcRow, srcCol);
     }
 
+    /**
+     * Replays a long move that has ended on the peer, with all its steps.
+     */
+    private void decodeWholeLongMove(int dir, int row, int col, int stopRow, int stopCol) {
+        mInLongMoveSync = false;// no step nor end follows
+        mNetworkedPlayer.deliverLongMove(dir, row, col, stopRow, stopCol);
+    }
+
+    private void decodeLongMoveStep() {
+        mNetworkedPlayer.inputController().longMover().doStep();
+    }
+
+    private void decodeLongMoveEnd() {
+        mInLongMoveSync = false;
+        mNetworkedPlayer.inputController().longMover().stop();
+    }
+
+    private void decodeResign() {
+        mNetworkedPlayer.inputController().acceptResignation(mNetworkedPlayer.mId == 0 ? 1 : 0);
+    }
+
+    /**
+     * Compares the position hash of the peer with the local one. It can't
+     * be compared during a long move, whose steps may lag behind the peer's.
+     */
+    private void decodeCheckpoint(long hash) {
+        final PermainanGame game = mNetworkedPlayer.inputController().game();
+
+        if (!game.isLongMoveActive() && game.positionHash() != hash)
+            mDesynced = true;
+    }
+
+    private void decodeSnapshot(BitBoard position) {
+        mNetworkedPlayer.inputController().restorePosition(position);
+        mDesynced = false;
+    }
+
+    /**
+     * Checks the sequence of a binary message against the last one counted.
+     *
+     * @param type
+     * @param sequence
+     * @return whether the message is to be decoded; a repeated one is not,
+     *      nor is a counted one after a gap, which leaves this desynced
+     */
+    private boolean acceptSequence(int type, int sequence) {
+        final int ahead = (sequence - mReceivedSequence) & SEQUENCE_MASK;
+
+        switch (type) {
+            case MSG_SNAPSHOT:
+                mReceivedSequence = sequence;// the peer's position as of it
+                return true;
+            case MSG_RESYNC_REQUEST:
+                return true;
+            case MSG_CHECKPOINT:
+                if (ahead != 0 && ahead <= SEQUENCE_MASK / 2)
+                    mDesynced = true;// counted messages were missed
+
+                return ahead == 0;
+            default:
+                if (ahead == 1) {
+                    mReceivedSequence = sequence;
+                    return true;
+                } else if (ahead == 0 || ahead > SEQUENCE_MASK / 2) {
+                    return false;// repeated
+                }
+
+                mReceivedSequence = sequence;
+                mDesynced = true;
+                return false;
+        }
+    }
+
     @Override
     public void decodeMoveTask(String inputMessage) {
         if (inputMessage == null || inputMessage.length() == 0) {
@@ -57,14 +210,22 @@ public class PermainanModulator implements Modulator<String> {
             decodeLongMoveTask(inputMessage);
             return;
         } else if (inputMessage.charAt(0) == 'I') {
-            mNetworkedPlayer.inputController().longMover().doStep();
+            decodeLongMoveStep();
             return;
         } else if (inputMessage.charAt(0) == 'F') {
-            mInLongMoveSync = false;
-            mNetworkedPlayer.inputController().longMover().stop();
+            decodeLongMoveEnd();
             return;
         } else if (inputMessage.charAt(0) == 'R') {
-            mNetworkedPlayer.inputController().acceptResignation(mNetworkedPlayer.mId == 0 ? 1 : 0);
+            decodeResign();
+            return;
+        } else if (inputMessage.charAt(0) == 'H') {
+            decodeCheckpoint(parseHash(inputMessage));
+            return;
+        } else if (inputMessage.charAt(0) == 'Q') {
+            mResyncRequested = true;
+            return;
+        } else if (inputMessage.charAt(0) == 'S') {
+            decodeSnapshot(BitBoard.parse(inputMessage.substring(2)));
             return;
         }
 
@@ -102,6 +263,21 @@ public class PermainanModulator implements Modulator<String> {
         return "L" + dirChar + " " + row + " " + col;
     }
 
+    /**
+     * Encodes a long move that has ended, to be replayed by the peer in a
+     * game that replays long moves; no step nor end message is then sent.
+     *
+     * @param dir initial direction
+     * @param row start row
+     * @param col start column
+     * @param stopRow row the pebble stopped at
+     * @param stopCol column the pebble stopped at
+     * @return
+     */
+    public String encodeLongMoveTask(int dir, int row, int col, int stopRow, int stopCol) {
+        return encodeLongMoveTask(dir, row, col) + " " + stopRow + " " + stopCol;
+    }
+
     public String encodeLongMoveStep(int srcRow, int srcCol, int dstRow, int dstCol) {
         return "I " + encodeMoveTask(srcRow, srcCol, dstRow, dstCol);
     }
@@ -116,4 +292,401 @@ public class PermainanModulator implements Modulator<String> {
         return "R";
     }
 
+    public int getCheckpointInterval() {
+        return mCheckpointInterval;
+    }
+
+    /**
+     * Sets how many messages are sent between checkpoints.
+     *
+     * @param messages messages, or 0 for no checkpoints, which is the default
+     */
+    public void setCheckpointInterval(int messages) {
+        if (messages < 0) {
+            throw new IllegalArgumentException("Invalid checkpoint interval: " + messages);
+        }
+
+        mCheckpointInterval = messages;
+    }
+
+    /**
+     * @return whether a checkpoint is to be sent after the last message
+     *      encoded, once the local game is done with it (i.e. has no long
+     *      move under-process); otherwise the hashes would differ
+     */
+    public boolean isCheckpointDue() {
+        return mCheckpointInterval > 0 && mMoveSoph > 0 && mMoveSoph % mCheckpointInterval == 0;
+    }
+
+    /**
+     * @return whether a checkpoint from the peer didn't match the local
+     *      position, or binary messages from it were missed; a resync
+     *      request is then to be sent
+     */
+    public boolean isDesynced() {
+        return mDesynced;
+    }
+
+    /**
+     * @return whether the peer has requested a snapshot of the local
+     *      position, which is to be sent
+     */
+    public boolean isResyncRequested() {
+        return mResyncRequested;
+    }
+
+    public String encodeCheckpoint(PermainanGame game) {
+        return "H " + Long.toHexString(game.positionHash());
+    }
+
+    public String encodeResyncRequest() {
+        return "Q";
+    }
+
+    public String encodeSnapshot(PermainanGame game) {
+        mResyncRequested = false;
+        return "S " + game.position().toNotation();
+    }
+
+    /**
+     * Decodes a binary message, delivering its input to the networked
+     * player.
+     *
+     * @param message buffer holding the message
+     * @param offset index of its first byte
+     * @return number of bytes of the message
+     */
+    public int decodeMoveTask(byte[] message, int offset) {
+        final int length = binaryLength(message, offset);
+        final int type = typeOf(message, offset);
+
+        if (!acceptSequence(type, sequenceOf(message, offset)))
+            return length;
+        if (!isPayloadValid(type, message, offset)) {
+            mDesynced = true;// corrupt, or not from a peer
+            return length;
+        }
+
+        switch (type) {
+            case MSG_MOVE:
+                mNetworkedPlayer.deliverMove(highNibble(message[offset + 2]), lowNibble(message[offset + 2]),
+                        highNibble(message[offset + 3]), lowNibble(message[offset + 3]));
+                break;
+            case MSG_LONG_MOVE:
+            case MSG_WHOLE_LONG_MOVE:
+                final int dir = lowNibble(message[offset + 3]);
+
+                if (type == MSG_WHOLE_LONG_MOVE) {
+                    decodeWholeLongMove(dir, highNibble(message[offset + 2]), lowNibble(message[offset + 2]),
+                            highNibble(message[offset + 4]), lowNibble(message[offset + 4]));
+                    break;
+                }
+
+                mInLongMoveSync = true;
+                mNetworkedPlayer.deliverLongMove(dir,
+                        highNibble(message[offset + 2]), lowNibble(message[offset + 2]));
+                break;
+            case MSG_LONG_MOVE_STEP:
+                decodeLongMoveStep();
+                break;
+            case MSG_LONG_MOVE_END:
+                decodeLongMoveEnd();
+                break;
+            case MSG_RESIGN:
+                decodeResign();
+                break;
+            case MSG_CHECKPOINT:
+                decodeCheckpoint(readBytes(message, offset + HEADER_LENGTH, 8));
+                break;
+            case MSG_RESYNC_REQUEST:
+                mResyncRequested = true;
+                break;
+            case MSG_SNAPSHOT:
+                final long mask0 = readBytes(message, offset + HEADER_LENGTH, MASK_LENGTH);
+                final long mask1 = readBytes(message, offset + HEADER_LENGTH + MASK_LENGTH, MASK_LENGTH);
+                final int side = (int) (mask0 >>> BitBoard.CELLS);
+
+                decodeSnapshot(new BitBoard(mask0 & BitBoard.ALL_CELLS, mask1, side));
+                break;
+            default:
+                break;// binaryLength() has checked the type
+        }
+
+        return length;
+    }
+
+    /**
+     * @return whether the rows, columns, direction & pebble masks in the
+     *      payload of the binary message are valid; the nibbles of a
+     *      corrupt one may hold up to 15
+     */
+    private static boolean isPayloadValid(int type, byte[] message, int offset) {
+        switch (type) {
+            case MSG_MOVE:
+            case MSG_LONG_MOVE_STEP:
+                return isOnGrid(message[offset + 2]) && isOnGrid(message[offset + 3]);
+            case MSG_WHOLE_LONG_MOVE:
+                if (!isOnGrid(message[offset + 4]))
+                    return false;
+                // fall through
+            case MSG_LONG_MOVE:
+                final int dir = message[offset + 3] & 0xFF;
+                return isOnGrid(message[offset + 2]) && (dir == PermainanGrid.UP || dir == PermainanGrid.DOWN
+                        || dir == PermainanGrid.LEFT || dir == PermainanGrid.RIGHT);
+            case MSG_SNAPSHOT:
+                final long mask0 = readBytes(message, offset + HEADER_LENGTH, MASK_LENGTH);
+                final long mask1 = readBytes(message, offset + HEADER_LENGTH + MASK_LENGTH, MASK_LENGTH);
+                final long pieces0 = mask0 & BitBoard.ALL_CELLS;
+
+                return (mask0 >>> BitBoard.CELLS) <= 1 && (mask1 >>> BitBoard.CELLS) == 0
+                        && (pieces0 & mask1) == 0 && Long.bitCount(pieces0) <= BitBoard.MAX_PIECES
+                        && Long.bitCount(mask1) <= BitBoard.MAX_PIECES;
+            default:
+                return true;
+        }
+    }
+
+    /* Whether both nibbles, a row & a column, are on the grid */
+    private static boolean isOnGrid(byte cell) {
+        return highNibble(cell) < BitBoard.SIZE && lowNibble(cell) < BitBoard.SIZE;
+    }
+
+    /**
+     * Writes a binary move message.
+     *
+     * @param out buffer with room for {@link #MAX_BINARY_LENGTH} bytes
+     *      after offset
+     * @param offset index of the first byte written
+     * @return number of bytes written
+     */
+    public int encodeMoveTask(int srcRow, int srcCol, int dstRow, int dstCol, byte[] out, int offset) {
+        ++mMoveSoph;
+        return writeCells(MSG_MOVE, srcRow, srcCol, dstRow, dstCol, out, offset);
+    }
+
+    /**
+     * Writes a binary long move message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeLongMoveTask(int dir, int row, int col, byte[] out, int offset) {
+        if (dir != PermainanGrid.UP && dir != PermainanGrid.DOWN
+                && dir != PermainanGrid.LEFT && dir != PermainanGrid.RIGHT) {
+            throw new IllegalArgumentException("Illegal dir : " + dir);
+        }
+
+        ++mMoveSoph;
+        return writeCells(MSG_LONG_MOVE, row, col, 0, dir, out, offset);
+    }
+
+    /**
+     * Writes a binary message of a long move that has ended.
+     *
+     * @see #encodeLongMoveTask(int, int, int, int, int)
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeLongMoveTask(int dir, int row, int col, int stopRow, int stopCol,
+                                  byte[] out, int offset) {
+        final int length = encodeLongMoveTask(dir, row, col, out, offset);
+        out[offset] = (byte) (MSG_WHOLE_LONG_MOVE << 4 | (out[offset] & 0xF));
+        out[offset + length] = (byte) (stopRow << 4 | stopCol);
+        return length + 1;
+    }
+
+    /**
+     * Writes a binary long move step message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeLongMoveStep(int srcRow, int srcCol, int dstRow, int dstCol, byte[] out, int offset) {
+        ++mMoveSoph;
+        return writeCells(MSG_LONG_MOVE_STEP, srcRow, srcCol, dstRow, dstCol, out, offset);
+    }
+
+    /**
+     * Writes a binary long move end message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeLongMoveEnd(byte[] out, int offset) {
+        ++mMoveSoph;
+        return writeHeader(MSG_LONG_MOVE_END, out, offset);
+    }
+
+    /**
+     * Writes a binary resignation message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeResign(byte[] out, int offset) {
+        ++mMoveSoph;
+        return writeHeader(MSG_RESIGN, out, offset);
+    }
+
+    /**
+     * Writes a binary checkpoint message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeCheckpoint(PermainanGame game, byte[] out, int offset) {
+        writeHeader(MSG_CHECKPOINT, out, offset);
+        writeBytes(game.positionHash(), 8, out, offset + HEADER_LENGTH);
+        return HEADER_LENGTH + 8;
+    }
+
+    /**
+     * Writes a binary resync request message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeResyncRequest(byte[] out, int offset) {
+        return writeHeader(MSG_RESYNC_REQUEST, out, offset);
+    }
+
+    /**
+     * Writes a binary snapshot message.
+     *
+     * @see #encodeMoveTask(int, int, int, int, byte[], int)
+     */
+    public int encodeSnapshot(PermainanGame game, byte[] out, int offset) {
+        final BitBoard position = game.position();
+        mResyncRequested = false;
+
+        writeHeader(MSG_SNAPSHOT, out, offset);
+        writeBytes((long) position.sideToMove() << BitBoard.CELLS | position.pieces(0),
+                MASK_LENGTH, out, offset + HEADER_LENGTH);
+        writeBytes(position.pieces(1), MASK_LENGTH, out, offset + HEADER_LENGTH + MASK_LENGTH);
+        return HEADER_LENGTH + 2 * MASK_LENGTH;
+    }
+
+    /**
+     * @return the sequence number of the last counted binary message
+     *      decoded, or 0 if there is none; as the low 12 bits of the peer's
+     *      {@link #mMoveSoph}
+     */
+    public int receivedSequence() {
+        return mReceivedSequence;
+    }
+
+    /**
+     * @param message
+     * @param offset
+     * @return the type (MSG_*) of the binary message at the given offset
+     */
+    public static int typeOf(byte[] message, int offset) {
+        return highNibble(message[offset]);
+    }
+
+    /**
+     * @param message
+     * @param offset
+     * @return the sequence number of the binary message at the given offset
+     */
+    public static int sequenceOf(byte[] message, int offset) {
+        return (message[offset] & 0xF) << 8 | (message[offset + 1] & 0xFF);
+    }
+
+    /**
+     * @param message
+     * @param offset
+     * @return the number of bytes of the binary message at the given offset,
+     *      which must all be in the buffer
+     */
+    public static int binaryLength(byte[] message, int offset) {
+        if (offset < 0 || offset + HEADER_LENGTH > message.length) {
+            throw new IllegalArgumentException("Invalid move message recieved");
+        }
+
+        final int length;
+        switch (typeOf(message, offset)) {
+            case MSG_MOVE:
+            case MSG_LONG_MOVE:
+            case MSG_LONG_MOVE_STEP:
+                length = HEADER_LENGTH + 2;
+                break;
+            case MSG_WHOLE_LONG_MOVE:
+                length = HEADER_LENGTH + 3;
+                break;
+            case MSG_CHECKPOINT:
+                length = HEADER_LENGTH + 8;
+                break;
+            case MSG_SNAPSHOT:
+                length = HEADER_LENGTH + 2 * MASK_LENGTH;
+                break;
+            case MSG_LONG_MOVE_END:
+            case MSG_RESIGN:
+            case MSG_RESYNC_REQUEST:
+                length = HEADER_LENGTH;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid message type: " + typeOf(message, offset));
+        }
+
+        if (offset + length > message.length) {
+            throw new IllegalArgumentException("Truncated move message recieved");
+        }
+
+        return length;
+    }
+
+    private int writeHeader(int type, byte[] out, int offset) {
+        final int sequence = mMoveSoph & SEQUENCE_MASK;
+        out[offset] = (byte) (type << 4 | sequence >>> 8);
+        out[offset + 1] = (byte) sequence;
+        return HEADER_LENGTH;
+    }
+
+    private int writeCells(int type, int row0, int col0, int row1, int col1, byte[] out, int offset) {
+        writeHeader(type, out, offset);
+        out[offset + 2] = (byte) (row0 << 4 | col0);
+        out[offset + 3] = (byte) (row1 << 4 | col1);
+        return HEADER_LENGTH + 2;
+    }
+
+    /**
+     * Parses the hash of a checkpoint, written as an unsigned hex number
+     * after "H ".
+     */
+    private static long parseHash(String message) {
+        if (message.length() < 3 || message.length() > 18) {
+            throw new IllegalArgumentException("Invalid checkpoint recieved");
+        }
+
+        long hash = 0;
+        for (int i = 2; i < message.length(); i++) {
+            final int digit = Character.digit(message.charAt(i), 16);
+            if (digit == -1) {
+                throw new IllegalArgumentException("Invalid checkpoint recieved");
+            }
+
+            hash = hash << 4 | digit;
+        }
+
+        return hash;
+    }
+
+    /* Big-endian */
+    private static void writeBytes(long value, int count, byte[] out, int offset) {
+        for (int i = count - 1; i >= 0; i--, value >>>= 8) {
+            out[offset + i] = (byte) value;
+        }
+    }
+
+    private static long readBytes(byte[] in, int offset, int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value << 8 | (in[offset + i] & 0xFF);
+        }
+
+        return value;
+    }
+
+    private static int highNibble(byte b) {
+        return (b >>> 4) & 0xF;
+    }
+
+    private static int lowNibble(byte b) {
+        return b & 0xF;
+    }
+
 }
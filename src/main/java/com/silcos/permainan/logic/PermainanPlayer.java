@@ -2,6 +2,7 @@ package com.silcos.permainan.logic;
 
 import com.silcos.board.Board;
 import com.silcos.board.BoardGame;
+import com.silcos.board.Piece;
 import com.silcos.board.Player;
 
 public abstract class PermainanPlayer extends Player {
@@ -23,8 +24,55 @@ public abstract class PermainanPlayer extends Player {
         super.onTurn();
     }
 
+    /**
+     * Called when an input is placed on the board by any player, before it
+     * is played out (a long move takes several steps).
+     *
+     * @param playerId id of the player providing the input
+     */
+    public void onInputPlaced(int playerId) {
+    }
+
+    /**
+     * Resigns the game, e.g. as a computer player has no input to place,
+     * which the searches score as a loss.
+     */
+    protected void resign() {
+        inputController().acceptResignation(mId == 0 ? 1 : 0);
+    }
+
+    /**
+     * Called when the turn this player was last given is taken back, e.g.
+     * as the game restores a snapshot of a networked peer. A computer
+     * player drops the input it is searching for; {@link #onTurn()} is
+     * called again if the player is still to move.
+     */
+    public void cancelTurn() {
+    }
+
+    /**
+     * Called when the game is stopped, to release what this player holds
+     * beyond it, e.g. the threads of a computer player. The player is not
+     * asked for inputs anymore.
+     */
+    public void close() {
+    }
+
+    /**
+     * @param millis delay before a computer player places its input, to be
+     *      seen playing
+     * @return the delay, or 0 in a headless game
+     */
+    protected long inputDelay(long millis) {
+        return (mWork instanceof PermainanGame && ((PermainanGame) mWork).isHeadless()) ? 0 : millis;
+    }
+
     public boolean isNetworked;
 
+    Piece[] pieces() {
+        return myPieces;
+    }
+
     protected void initialPlacement() {
         if(mId == 0) {
             for(int i = 0; i <= 1; i++) {
@@ -59,6 +107,10 @@ public abstract class PermainanPlayer extends Player {
         return inputController().placeLongMove(dir, row, col);
     }
 
+    public boolean deliverLongMove(int dir, int row, int col, int stopRow, int stopCol) {
+        return inputController().placeLongMove(dir, row, col, stopRow, stopCol);
+    }
+
     public void initAfterGame() {
         if(mWasInited) return;
         allocatePieces(12, mId);
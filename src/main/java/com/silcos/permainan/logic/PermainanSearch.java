@@ -0,0 +1,781 @@
+package com.silcos.permainan.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PermainanSearch} finds the best input for a position by searching
+ * on a single {@link BitBoard}: each input is made on the board before
+ * descending into it, and unmade after it has been searched. So unlike the
+ * search on state-caches, no board is copied for each generated input and
+ * the memory used by a search does not grow with its width. Below the root,
+ * inputs are generated by {@link MoveGenerator} into a buffer per ply, so
+ * the search allocates nothing per node.
+ *
+ * Scores are evaluated by a {@link PieceSquareTable}, which the board keeps
+ * updated as inputs are made & unmade (see {@link BitBoard#eval()}); +ve
+ * values favour the player 0 (the max player). By default, this is
+ * {@link GridAnalyzer#eval(BitBoard)}.
+ *
+ * The search is an alpha-beta search. It returns the same input as a full
+ * minimax search over the same order of root inputs (see
+ * {@link #findBestInputByMinimax}): the last input with the best score.
+ * To find ties, each root input after the first one is searched with a
+ * window just below the best score found so far. The inputs of other
+ * nodes are ordered by a {@link MoveOrdering}, for earlier cutoffs.
+ *
+ * Beyond the nominal depth, a quiescence search follows the long moves that
+ * kill a pebble until the position is quiet, so that a kill available on
+ * the next ply is not missed by the evaluation.
+ *
+ * If a {@link TranspositionTable} is given, positions reached again through
+ * a different order of inputs are not searched again. A stored score is only
+ * reused for the same remaining depth, so scores stay exactly those of a
+ * fixed-depth search.
+ *
+ * Searches can also deepen iteratively under a time and/or node budget,
+ * returning the best input of the deepest iteration that completed. They
+ * can also be stopped from another thread by a stop flag.
+ *
+ * With more than one thread (see {@link #setThreadCount(int)}), the root
+ * inputs after the first one are searched concurrently in a
+ * {@link ForkJoinPool}, by helper searches sharing the transposition table.
+ * The input picked at a fixed depth is the same as that of a serial search.
+ */
+public class PermainanSearch {
+
+    /**
+     * Score of a position whose side-to-move has no input left (lost all
+     * its pebbles); wins that happen earlier score higher.
+     */
+    public static final int WIN_SCORE = 1000000;
+    public static final int INFINITY = WIN_SCORE + 1;
+
+    /**
+     * Maximum depth to which a search can go.
+     */
+    public static final int MAX_DEPTH = 64;
+
+    /**
+     * Maximum number of kills followed by the quiescence search.
+     */
+    public static final int MAX_QUIESCENCE_PLIES = 8;
+
+    /* Deepest ply reachable, with the quiescence search */
+    private static final int MAX_PLY = MAX_DEPTH + MAX_QUIESCENCE_PLIES;
+
+    /* Scores beyond this are wins/losses, which are stored relative to the node */
+    private static final int WIN_THRESHOLD = WIN_SCORE - 1000;
+
+    /* Budgets are checked once every (BUDGET_CHECK_INTERVAL + 1) nodes */
+    private static final int BUDGET_CHECK_INTERVAL = 1023;
+
+    private final BitBoard mBoard;
+    private final PermainanSearch mOwner;// search whose budget this one shares
+    private TranspositionTable mTable;
+    private Random mRandom;
+    private boolean mQuiescence = true;
+    private PieceSquareTable mEvalTable = PieceSquareTable.CLASSIC;
+    private int mThreatWeight;
+    private boolean mEscapesFirst;
+    private final ThreatMap mThreats = new ThreatMap();
+    private final MoveOrdering mOrdering = new MoveOrdering();
+
+    /* Searches begun by the owner; a helper's ordering is of the one it counts */
+    private int mSearchCount;
+    private int mOrderingSearch;
+
+    /* Picks the moves of each ply, allocated when the ply is first reached */
+    private final MovePicker[] mPickers = new MovePicker[MAX_PLY + 1];
+    private boolean mMinimax;
+    private GridChangeInput mBestInput;
+    private List<GridChangeInput> mRootOrder;// before the best input is moved first
+    private int mBestScore;
+    private long mNodeCount;
+    private int mCompletedDepth;
+
+    private boolean mBudgeted;
+    private volatile boolean mAborted;
+    private AtomicBoolean mStopFlag;
+    private long mDeadline;
+    private long mNodeLimit;
+    private final AtomicLong mBudgetNodeCount = new AtomicLong();
+
+    private int mThreadCount = 1;
+    private volatile ForkJoinPool mPool;
+    private final ConcurrentLinkedQueue<PermainanSearch> mIdleHelpers =
+            new ConcurrentLinkedQueue<>();
+    private final AtomicLong mHelperNodeCount = new AtomicLong();
+
+    public PermainanSearch() {
+        this((TranspositionTable) null);
+    }
+
+    /**
+     * @param table transposition table to be used, which can be shared
+     *      across the searches of a game; or null
+     */
+    public PermainanSearch(TranspositionTable table) {
+        mBoard = new BitBoard(0, 0, 0);
+        mOwner = this;
+        mTable = table;
+    }
+
+    /**
+     * Creates a helper that searches root inputs for the given search.
+     */
+    private PermainanSearch(PermainanSearch owner) {
+        mBoard = new BitBoard(0, 0, 0);
+        mOwner = owner;
+        mTable = owner.mTable;
+    }
+
+    public PieceSquareTable getEvalTable() {
+        return mEvalTable;
+    }
+
+    /**
+     * Sets the table positions are evaluated by, which is
+     * {@link PieceSquareTable#CLASSIC} unless set otherwise. The scores
+     * of another table are cleared from the transposition table.
+     *
+     * @param table
+     */
+    public void setEvalTable(PieceSquareTable table) {
+        if (table == null) {
+            throw new IllegalArgumentException("No eval table given");
+        }
+
+        if (mTable != null && !table.equals(mEvalTable))
+            mTable.clear();
+        mEvalTable = table;
+    }
+
+    public int getThreatWeight() {
+        return mThreatWeight;
+    }
+
+    /**
+     * Sets the points added to the evaluation for each pebble of the other
+     * player that a player can kill by a long move (see {@link ThreatMap}),
+     * which is 0 unless set otherwise. The scores of another weight are
+     * cleared from the transposition table.
+     *
+     * @param weight
+     */
+    public void setThreatWeight(int weight) {
+        if (mTable != null && weight != mThreatWeight)
+            mTable.clear();
+        mThreatWeight = weight;
+    }
+
+    public boolean isEscapesFirst() {
+        return mEscapesFirst;
+    }
+
+    /**
+     * Sets whether quiet inputs of pebbles in danger are searched before
+     * the other quiet inputs (see {@link MoveOrdering#setEscapesFirst(boolean)}),
+     * which is off unless set. At depth 5 it saved almost no nodes and took
+     * about 30% longer, for the threat map it updates at each node.
+     *
+     * @param escapesFirst
+     */
+    public void setEscapesFirst(boolean escapesFirst) {
+        mEscapesFirst = escapesFirst;
+    }
+
+    public AtomicBoolean getStopFlag() {
+        return mStopFlag;
+    }
+
+    /**
+     * Sets a flag which stops the searches of this one when it is set, even
+     * before their first iteration completes; so they may find no input.
+     * The flag is checked every few nodes & never cleared by the search.
+     *
+     * @param stopFlag flag, or null for none
+     */
+    public void setStopFlag(AtomicBoolean stopFlag) {
+        mStopFlag = stopFlag;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return mTable;
+    }
+
+    public void setTranspositionTable(TranspositionTable table) {
+        mTable = table;
+    }
+
+    /**
+     * Sets the source of randomness used to shuffle the root inputs before
+     * they are ordered, which picks between equally good inputs for
+     * variety. Without one, the same position always gets the same input.
+     *
+     * @param random source of randomness, or null for none
+     */
+    public void setTieBreakingRandom(Random random) {
+        mRandom = random;
+    }
+
+    /**
+     * Breaks ties randomly (see {@link #setTieBreakingRandom(Random)}) with
+     * the given seed. Searches with the same seed pick the same input.
+     *
+     * @param seed
+     */
+    public void setRandomSeed(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    public boolean isQuiescence() {
+        return mQuiescence;
+    }
+
+    /**
+     * Sets whether positions at the nominal depth are searched further for
+     * kills, which is the default; or just evaluated. The scores of the
+     * other setting are cleared from the transposition table.
+     *
+     * @param quiescence
+     */
+    public void setQuiescence(boolean quiescence) {
+        if (mTable != null && quiescence != mQuiescence)
+            mTable.clear();
+        mQuiescence = quiescence;
+    }
+
+    public int getThreadCount() {
+        return mThreadCount;
+    }
+
+    /**
+     * Sets the number of threads searching concurrently. Threads other
+     * than the calling one are kept in a pool owned by this search, which
+     * is shut down when the count is set back to 1.
+     *
+     * @param threads
+     */
+    public void setThreadCount(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        if (threads == mThreadCount)
+            return;
+
+        if (mPool != null)
+            mPool.shutdown();
+
+        mPool = (threads > 1) ? new ForkJoinPool(threads) : null;
+        mThreadCount = threads;
+    }
+
+    /**
+     * Shuts down the threads of this search, if it has any. The search
+     * can still be used afterwards, on the calling thread only.
+     */
+    public void close() {
+        setThreadCount(1);
+    }
+
+    /**
+     * Searches the given position to a fixed depth.
+     *
+     * @param root position to be searched; it is not modified
+     * @param depth number of plies to search
+     * @return the best input for the side-to-move, or null if it has none
+     */
+    public GridChangeInput findBestInput(BitBoard root, int depth) {
+        mMinimax = false;
+        return searchFrom(root, depth, depth, 0, 0);
+    }
+
+    /**
+     * Searches the given position with iterative deepening: to depth 1,
+     * then 2 and so on, until maxDepth or until the budget runs out. The
+     * first iteration always completes, so an input is found if any
+     * exists.
+     *
+     * @param root position to be searched; it is not modified
+     * @param maxDepth maximum number of plies to search
+     * @param timeBudgetMillis time after which the search stops, or 0 for
+     *      no time limit
+     * @param nodeBudget number of nodes after which the search stops, or 0
+     *      for no node limit
+     * @return the best input found by the deepest completed iteration, or
+     *      null if the side-to-move has no input
+     */
+    public GridChangeInput findBestInput(BitBoard root, int maxDepth,
+                                         long timeBudgetMillis, long nodeBudget) {
+        mMinimax = false;
+        return searchFrom(root, 1, maxDepth, timeBudgetMillis, nodeBudget);
+    }
+
+    /**
+     * Searches the given position to a fixed depth without any pruning,
+     * nor the transposition table. This is a reference for findBestInput()
+     * and is much slower.
+     *
+     * @param root position to be searched; it is not modified
+     * @param depth number of plies to search
+     * @return the best input for the side-to-move, or null if it has none
+     */
+    public GridChangeInput findBestInputByMinimax(BitBoard root, int depth) {
+        mMinimax = true;
+        return searchFrom(root, depth, depth, 0, 0);
+    }
+
+    private GridChangeInput searchFrom(BitBoard root, int minDepth, int maxDepth,
+                                       long timeBudgetMillis, long nodeBudget) {
+        if (maxDepth < 1 || maxDepth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Invalid search depth: " + maxDepth);
+        }
+
+        mBoard.set(root);
+        mBoard.setEvalTable(mEvalTable);
+        mOrdering.setEscapesFirst(mEscapesFirst);
+        mBestInput = null;
+        mBestScore = 0;
+        mNodeCount = 0;
+        mHelperNodeCount.set(0);
+        mBudgetNodeCount.set(0);
+        mCompletedDepth = 0;
+        mBudgeted = false;
+        mAborted = false;
+        mDeadline = (timeBudgetMillis > 0)
+                ? System.nanoTime() + timeBudgetMillis * 1000000L : Long.MAX_VALUE;
+        mNodeLimit = (nodeBudget > 0) ? nodeBudget : Long.MAX_VALUE;
+
+        if (mTable != null)
+            mTable.newGeneration();
+        mOrdering.newSearch();
+        ++mSearchCount;
+
+        /* The root is only ordered in ways that don't depend on earlier
+           searches, so that minimax searches the same order */
+        final List<GridChangeInput> rootInputs =
+                GridAnalyzer.findAllInputs(mBoard.sideToMove(), mBoard, false, mRandom);
+        MoveOrdering.orderCapturesFirst(rootInputs);
+        mRootOrder = new ArrayList<>(rootInputs);
+
+        for (int depth = minDepth; depth <= maxDepth; depth++) {
+            final int score = searchRoot(rootInputs, depth);
+            if (mAborted)
+                break;
+
+            mBestScore = score;
+            mCompletedDepth = depth;
+            mBudgeted = true;// only the first iteration must complete
+
+            if (mBestInput == null || Math.abs(score) > WIN_THRESHOLD)
+                break;// no deeper search changes a forced result
+
+            /* The best input is searched first in the next iteration, which
+               speeds it up; ties are still picked by the order above */
+            rootInputs.remove(mBestInput);
+            rootInputs.add(0, mBestInput);
+        }
+
+        return mBestInput;
+    }
+
+    /**
+     * @return score of the last search, +ve values favouring the player 0
+     */
+    public int bestScore() {
+        return mBestScore;
+    }
+
+    /**
+     * @return number of nodes visited by the last search, on all threads
+     */
+    public long nodeCount() {
+        return mNodeCount + mHelperNodeCount.get();
+    }
+
+    /**
+     * @return depth of the deepest iteration completed in the last search
+     */
+    public int completedDepth() {
+        return mCompletedDepth;
+    }
+
+    /**
+     * @return whether the search has run out of its budget, or has been
+     *      stopped; checked every few nodes
+     */
+    private boolean isOutOfBudget() {
+        if ((mNodeCount & BUDGET_CHECK_INTERVAL) != 0)
+            return false;
+
+        final PermainanSearch owner = mOwner;
+        final long nodes = owner.mBudgetNodeCount.addAndGet(BUDGET_CHECK_INTERVAL + 1);
+        if (owner.mStopFlag != null && owner.mStopFlag.get())
+            owner.mAborted = true;
+        if (!owner.mBudgeted)
+            return owner.mAborted;
+
+        if (nodes >= owner.mNodeLimit || System.nanoTime() >= owner.mDeadline)
+            owner.mAborted = true;
+
+        return owner.mAborted;
+    }
+
+    private static int scoreToTable(int score, int ply) {
+        if (score > WIN_THRESHOLD)
+            return score + ply;
+        if (score < -WIN_THRESHOLD)
+            return score - ply;
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score > WIN_THRESHOLD)
+            return score - ply;
+        if (score < -WIN_THRESHOLD)
+            return score + ply;
+        return score;
+    }
+
+    private static int cellOf(GridChangeInput input, boolean to) {
+        return to ? BitBoard.cell(input.mToCell.row(), input.mToCell.column())
+                : BitBoard.cell(input.mFromCell.row(), input.mFromCell.column());
+    }
+
+    private MovePicker movePicker(int ply) {
+        if (mPickers[ply] == null)
+            mPickers[ply] = new MovePicker(mOrdering);
+
+        return mPickers[ply];
+    }
+
+    /**
+     * @return eval() relative to the side to move
+     */
+    private int evalForSideToMove() {
+        int eval = mBoard.eval();
+
+        if (mThreatWeight != 0) {
+            mThreats.update(mBoard);
+            eval += mThreatWeight * (Long.bitCount(mThreats.threats(0))
+                    - Long.bitCount(mThreats.threats(1)));
+        }
+
+        return (mBoard.sideToMove() == 0) ? eval : -eval;
+    }
+
+    /**
+     * @return whether the given root input comes after the best one so far
+     *      in the order the root was first searched in, so that it is
+     *      picked over it when they tie
+     */
+    private boolean isLaterRootInput(GridChangeInput input, GridChangeInput bestInput) {
+        return bestInput == null || mRootOrder.indexOf(input) > mRootOrder.indexOf(bestInput);
+    }
+
+    /**
+     * Searches the root, picking the last of the best inputs just like
+     * the search on state-caches does; last in the order of the first
+     * iteration, whichever is searched first in later ones. The best input is left in
+     * mBestInput, unless the search is aborted.
+     *
+     * @return score in favour of the player 0
+     */
+    private int searchRoot(List<GridChangeInput> allInputs, int depth) {
+        final int side = mBoard.sideToMove();
+        GridChangeInput bestInput = null;
+        int bestScore = -INFINITY;
+
+        ++mNodeCount;
+        final ForkJoinPool pool = mPool;// close() may replace it meanwhile
+        if (pool != null && allInputs.size() > 1) {
+            final int[] scores = searchRootInParallel(pool, allInputs, depth);
+            if (mAborted)
+                return 0;
+
+            for (int i = 0; i < scores.length; i++) {
+                if (scores[i] > bestScore
+                        || (scores[i] == bestScore && isLaterRootInput(allInputs.get(i), bestInput))) {
+                    bestScore = scores[i];
+                    bestInput = allInputs.get(i);
+                }
+            }
+
+            mBestInput = bestInput;
+            return (side == 0) ? bestScore : -bestScore;
+        }
+
+        for (GridChangeInput input : allInputs) {
+            final int undo = mBoard.makeMove(cellOf(input, false), cellOf(input, true));
+
+            /* Scores not above (bestScore - 1) are only upper bounds, but
+               such inputs can't be picked anyway. */
+            final int alpha = (bestScore == -INFINITY) ? -INFINITY : bestScore - 1;
+            final int inputScore = -search(1, depth - 1, -INFINITY, -alpha);
+            mBoard.unmakeMove(undo);
+
+            if (mAborted)
+                return 0;
+
+            if (inputScore > bestScore
+                    || (inputScore == bestScore && isLaterRootInput(input, bestInput))) {
+                bestScore = inputScore;
+                bestInput = input;
+            }
+        }
+
+        mBestInput = bestInput;
+        if (allInputs.isEmpty())
+            bestScore = -WIN_SCORE;
+
+        return (side == 0) ? bestScore : -bestScore;
+    }
+
+    /**
+     * Searches the first root input on this thread, and then the others
+     * concurrently with helper searches, all of them with a window just
+     * below the score of the first one. Scores within that window are
+     * exact and the others can't be picked, so the last of the best inputs
+     * is the same as in a serial search.
+     *
+     * @return score of each root input, relative to the side to move
+     */
+    private int[] searchRootInParallel(ForkJoinPool pool, List<GridChangeInput> allInputs, final int depth) {
+        final int[] scores = new int[allInputs.size()];
+        final GridChangeInput first = allInputs.get(0);
+
+        final int undo = mBoard.makeMove(cellOf(first, false), cellOf(first, true));
+        scores[0] = -search(1, depth - 1, -INFINITY, INFINITY);
+        mBoard.unmakeMove(undo);
+
+        if (mAborted)
+            return scores;
+
+        final int alpha = scores[0] - 1;
+        final BitBoard root = new BitBoard(mBoard);
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(allInputs.size() - 1);
+
+        for (int i = 1; i < allInputs.size(); i++) {
+            final int index = i;
+            final GridChangeInput input = allInputs.get(i);
+
+            final Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    PermainanSearch helper = mIdleHelpers.poll();
+                    if (helper == null)
+                        helper = new PermainanSearch(PermainanSearch.this);
+
+                    try {
+                        scores[index] = helper.searchRootInput(root, input, depth, alpha);
+                    } finally {
+                        mIdleHelpers.offer(helper);
+                    }
+                }
+            };
+
+            try {
+                tasks.add(pool.submit(task));
+            } catch (RejectedExecutionException e) {
+                task.run();// the pool was shut down by close()
+            }
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+
+        return scores;
+    }
+
+    /**
+     * Searches a single root input on this helper.
+     *
+     * @return score of the input, relative to the side to move at the root
+     */
+    private int searchRootInput(BitBoard root, GridChangeInput input, int depth, int alpha) {
+        mBoard.set(root);
+        mTable = mOwner.mTable;
+        mMinimax = mOwner.mMinimax;
+        mQuiescence = mOwner.mQuiescence;
+        mThreatWeight = mOwner.mThreatWeight;
+        mOrdering.setEscapesFirst(mOwner.mEscapesFirst);
+        mNodeCount = 0;
+
+        /* Helpers are reused across searches, whose killers don't apply */
+        if (mOrderingSearch != mOwner.mSearchCount) {
+            mOrdering.newSearch();
+            mOrderingSearch = mOwner.mSearchCount;
+        }
+
+        mBoard.makeMove(cellOf(input, false), cellOf(input, true));
+        final int score = -search(1, depth - 1, -INFINITY, -alpha);
+
+        mOwner.mHelperNodeCount.addAndGet(mNodeCount);
+        return score;
+    }
+
+    /**
+     * Fail-soft quiescence search: the side to move can either stand pat
+     * on the evaluation, or kill a pebble by a long move.
+     *
+     * @param ply distance from the root
+     * @param quiescencePly distance from the nominal depth
+     * @param alpha
+     * @param beta
+     * @return score relative to the side to move
+     */
+    private int quiesce(int ply, int quiescencePly, int alpha, int beta) {
+        ++mNodeCount;
+
+        if (mOwner.mAborted || isOutOfBudget())
+            return 0;
+
+        final int side = mBoard.sideToMove();
+        if (mBoard.pieceCount(side) == 0)
+            return -(WIN_SCORE - ply);
+
+        int bestScore = evalForSideToMove();
+        if (!mQuiescence || quiescencePly == MAX_QUIESCENCE_PLIES)
+            return bestScore;
+
+        if (!mMinimax) {
+            if (bestScore >= beta)
+                return bestScore;
+            alpha = Math.max(alpha, bestScore);
+        }
+
+        final MovePicker picker = movePicker(ply);
+        picker.resetCaptures(mBoard);
+
+        for (int move = picker.next(); move != 0; move = picker.next()) {
+            final int undo = mBoard.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+            final int inputScore = -quiesce(ply + 1, quiescencePly + 1, -beta, -alpha);
+            mBoard.unmakeMove(undo);
+
+            if (mOwner.mAborted)
+                return 0;
+
+            bestScore = Math.max(bestScore, inputScore);
+
+            if (mMinimax)
+                continue;
+
+            alpha = Math.max(alpha, bestScore);
+            if (alpha >= beta)
+                break;
+        }
+
+        return bestScore;
+    }
+
+    /**
+     * Fail-soft alpha-beta search. The returned score is exact if it lies
+     * within (alpha, beta), otherwise it is a bound on the exact score.
+     *
+     * @param ply distance from the root
+     * @param depth remaining plies to search
+     * @param alpha
+     * @param beta
+     * @return score relative to the side to move
+     */
+    private int search(int ply, int depth, int alpha, int beta) {
+        if (depth <= 0)
+            return quiesce(ply, 0, alpha, beta);
+
+        ++mNodeCount;
+
+        if (mOwner.mAborted || isOutOfBudget())
+            return 0;
+
+        final boolean usesTable = mTable != null && !mMinimax;
+        final long key = mBoard.hash();
+        int tableMove = 0;
+
+        if (usesTable) {
+            final long entry = mTable.probe(key);
+
+            if (entry != 0) {
+                tableMove = TranspositionTable.moveOf(entry);
+
+                if (TranspositionTable.depthOf(entry) == depth) {
+                    final int score = scoreFromTable(TranspositionTable.scoreOf(entry), ply);
+
+                    switch (TranspositionTable.boundOf(entry)) {
+                        case TranspositionTable.BOUND_EXACT:
+                            return score;
+                        case TranspositionTable.BOUND_LOWER:
+                            if (score >= beta)
+                                return score;
+                            break;
+                        case TranspositionTable.BOUND_UPPER:
+                            if (score <= alpha)
+                                return score;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+        }
+
+        final int side = mBoard.sideToMove();
+        final MovePicker picker = movePicker(ply);
+        picker.reset(mBoard, ply, tableMove, !mMinimax);
+
+        final int originalAlpha = alpha;
+        int bestMove = 0;
+        int bestScore = -INFINITY;
+
+        for (int move = picker.next(); move != 0; move = picker.next()) {
+            final int undo = mBoard.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+            final int inputScore = -search(ply + 1, depth - 1, -beta, -alpha);
+            mBoard.unmakeMove(undo);
+
+            if (mOwner.mAborted)
+                return 0;// the score is incomplete, nor should it be stored
+
+            if (inputScore > bestScore) {
+                bestScore = inputScore;
+                bestMove = move;
+            }
+
+            if (mMinimax)
+                continue;
+
+            alpha = Math.max(alpha, bestScore);
+            if (alpha >= beta) {
+                mOrdering.onCutoff(move, side, ply, depth);
+                break;
+            }
+        }
+
+        if (bestMove == 0)
+            return -(WIN_SCORE - ply);// no inputs
+
+        if (usesTable) {
+            final int bound;
+
+            if (bestScore <= originalAlpha) {
+                bound = TranspositionTable.BOUND_UPPER;
+            } else if (bestScore >= beta) {
+                bound = TranspositionTable.BOUND_LOWER;
+            } else {
+                bound = TranspositionTable.BOUND_EXACT;
+            }
+
+            mTable.store(key, depth, scoreToTable(bestScore, ply), bound, bestMove);
+        }
+
+        return bestScore;
+    }
+
+}
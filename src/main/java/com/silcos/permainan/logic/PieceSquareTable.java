@@ -0,0 +1,111 @@
+package com.silcos.permainan.logic;
+
+import java.util.Arrays;
+
+/**
+ * {@link PieceSquareTable} scores a position by the cells its pebbles are
+ * on: each player has a table holding the worth of one of its pebbles on
+ * each cell, which includes the worth of the pebble itself. The score of a
+ * position is the worth of the pebbles of the player 0 less that of the
+ * pebbles of the player 1, so +ve values favour the player 0.
+ *
+ * As the score is a sum over pebbles, a {@link BitBoard} keeps it updated
+ * by the cells that change on each move (see {@link BitBoard#eval()}),
+ * instead of scanning the board at every leaf.
+ */
+public final class PieceSquareTable {
+
+    /**
+     * Worth of a pebble, on any cell.
+     */
+    public static final int PEBBLE_WORTH = 10;
+
+    /**
+     * The evaluation of {@link GridAnalyzer#eval(BitBoard)}: each pebble is
+     * worth 10 points, and r more on a diagonal cell of the row r.
+     */
+    public static final PieceSquareTable CLASSIC = classic();
+
+    private final int[][] mWorth = new int[2][BitBoard.CELLS];
+
+    /**
+     * @param worth0 worth of a pebble of the player 0 on each cell
+     * @param worth1 worth of a pebble of the player 1 on each cell
+     */
+    public PieceSquareTable(int[] worth0, int[] worth1) {
+        if (worth0.length != BitBoard.CELLS || worth1.length != BitBoard.CELLS) {
+            throw new IllegalArgumentException("Tables must have a worth for each of the "
+                    + BitBoard.CELLS + " cells");
+        }
+
+        System.arraycopy(worth0, 0, mWorth[0], 0, BitBoard.CELLS);
+        System.arraycopy(worth1, 0, mWorth[1], 0, BitBoard.CELLS);
+    }
+
+    private static PieceSquareTable classic() {
+        final int[] worth = new int[BitBoard.CELLS];
+
+        for (int cell = 0; cell < BitBoard.CELLS; cell++) {
+            final int r = BitBoard.row(cell);
+            final int c = BitBoard.column(cell);
+            final int rC = r < 3 ? r : 5 - r;
+            final int cC = c < 3 ? c : 5 - c;
+
+            worth[cell] = PEBBLE_WORTH + ((rC == cC) ? r : 0);
+        }
+
+        return new PieceSquareTable(worth, worth);
+    }
+
+    /**
+     * @param playerId
+     * @param cell
+     * @return worth of a pebble of the given player on the given cell
+     */
+    public int worth(int playerId, int cell) {
+        return mWorth[playerId][cell];
+    }
+
+    /**
+     * @param playerId
+     * @param cell
+     * @return what a pebble of the given player on the given cell adds
+     *      to the score of a position
+     */
+    public int score(int playerId, int cell) {
+        return (playerId == 0) ? mWorth[0][cell] : -mWorth[1][cell];
+    }
+
+    /**
+     * Scores the given position by scanning all its pebbles.
+     *
+     * @param position
+     * @return
+     */
+    public int score(BitBoard position) {
+        int score = 0;
+
+        for (int playerId = 0; playerId < 2; playerId++) {
+            long pieces = position.pieces(playerId);
+
+            while (pieces != 0) {
+                score += score(playerId, Long.numberOfTrailingZeros(pieces));
+                pieces &= pieces - 1;
+            }
+        }
+
+        return score;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PieceSquareTable &&
+                Arrays.deepEquals(mWorth, ((PieceSquareTable) o).mWorth);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(mWorth);
+    }
+
+}
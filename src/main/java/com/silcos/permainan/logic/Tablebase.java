@@ -0,0 +1,320 @@
+package com.silcos.permainan.logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link Tablebase} reads an endgame tablebase written by
+ * {@link TablebaseGenerator}: the result of perfect play from every
+ * position with up to a few pebbles, each player having at least one.
+ * The file is memory-mapped, so probing it reads only the pages touched.
+ *
+ * Each position has a 2-byte value: its result for the side-to-move (WIN,
+ * LOSS or DRAW) in the top 2 bits, and the number of plies until the game
+ * ends in the other 14. A side-to-move without pebbles has lost, & one
+ * without inputs too (as in {@link PermainanSearch}); a DRAW is a position
+ * from which neither player can force the other to that.
+ *
+ * Positions are indexed perfectly, i.e. without gaps or collisions: the
+ * tables of each material signature (the pebble counts of both players)
+ * follow each other in the file, and within a table a position is indexed
+ * by the combination of cells of the player 0, that of the cells left for
+ * the player 1, and the side to move.
+ */
+public final class Tablebase {
+
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+    public static final int DRAW = 3;
+
+    /**
+     * Most pebbles, of both players in total, that a tablebase can cover.
+     */
+    public static final int MAX_PIECES = 6;
+
+    /* "PTB1" */
+    static final int MAGIC = 0x50544231;
+    static final int HEADER_SIZE = 8;
+
+    private static final int RESULT_SHIFT = 14;
+    private static final int DISTANCE_MASK = (1 << RESULT_SHIFT) - 1;
+
+    /* Binomial coefficients, for indexing combinations of cells */
+    private static final int[][] sChoose = new int[BitBoard.CELLS + 1][MAX_PIECES + 1];
+
+    static {
+        for (int n = 0; n <= BitBoard.CELLS; n++) {
+            sChoose[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES; k++) {
+                sChoose[n][k] = (n == 0) ? 0 : sChoose[n - 1][k - 1] + sChoose[n - 1][k];
+            }
+        }
+    }
+
+    private final MappedByteBuffer mBuffer;
+    private final int mMaxPieces;
+
+    private Tablebase(MappedByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a Permainan tablebase");
+        }
+
+        mMaxPieces = buffer.getInt(4);
+        if (mMaxPieces < 2 || mMaxPieces > MAX_PIECES ||
+                buffer.capacity() != HEADER_SIZE + 2 * positionCount(mMaxPieces)) {
+            throw new IllegalArgumentException("Corrupt tablebase for " + mMaxPieces + " pebbles");
+        }
+
+        mBuffer = buffer;
+    }
+
+    /**
+     * Memory-maps the given tablebase file.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read
+     */
+    public static Tablebase open(File file) throws IOException {
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            final FileChannel channel = input.getChannel();
+            return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();// the mapping stays valid
+        }
+    }
+
+    /**
+     * @return most pebbles, of both players in total, of the positions
+     *      covered
+     */
+    public int maxPieces() {
+        return mMaxPieces;
+    }
+
+    /**
+     * @param position
+     * @return whether the given position is in this tablebase
+     */
+    public boolean covers(BitBoard position) {
+        final int pieces0 = position.pieceCount(0);
+        final int pieces1 = position.pieceCount(1);
+
+        return pieces0 > 0 && pieces1 > 0 && pieces0 + pieces1 <= mMaxPieces;
+    }
+
+    /**
+     * @param position
+     * @return the value of the given position (see {@link #resultOf(int)}
+     *      & {@link #distanceOf(int)}), or -1 if it is not covered
+     */
+    public int probe(BitBoard position) {
+        if (!covers(position))
+            return -1;
+
+        final long offset = HEADER_SIZE + 2 * (offsetOf(position.pieceCount(0), position.pieceCount(1))
+                + index(position.pieces(0), position.pieces(1), position.sideToMove()));
+        return mBuffer.getShort((int) offset) & 0xFFFF;
+    }
+
+    /**
+     * Picks the input of perfect play in the given position: the fastest
+     * win, the slowest loss, or one keeping the draw.
+     *
+     * @param position
+     * @return the input, packed as by {@link MoveGenerator}; or 0 if the
+     *      position is not covered or has no input
+     */
+    public int bestMove(BitBoard position) {
+        final int value = probe(position);
+        if (value == -1)
+            return 0;
+
+        final BitBoard board = new BitBoard(position);
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        final int count = MoveGenerator.generate(board, moves, 0);
+        int bestMove = 0;
+        int bestRank = Integer.MIN_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            final int undo = board.makeMove(MoveGenerator.from(moves[i]), MoveGenerator.to(moves[i]));
+            final int rank = rankForParent(board);
+            board.unmakeMove(undo);
+
+            if (rank > bestRank) {
+                bestRank = rank;
+                bestMove = moves[i];
+            }
+        }
+
+        return bestMove;
+    }
+
+    /**
+     * Ranks a child position from the point of view of the player who moved
+     * into it: wins before draws before losses, faster wins & slower
+     * losses first.
+     */
+    private int rankForParent(BitBoard child) {
+        if (child.pieceCount(child.sideToMove()) == 0)
+            return Integer.MAX_VALUE;// killed the last pebble
+
+        final int value = probe(child);
+        switch (resultOf(value)) {
+            case LOSS:
+                return DISTANCE_MASK + 1 - distanceOf(value);
+            case WIN:
+                return -DISTANCE_MASK - 1 + distanceOf(value);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param value value of a position (see {@link #probe(BitBoard)})
+     * @return WIN, LOSS or DRAW for the side-to-move
+     */
+    public static int resultOf(int value) {
+        return value >>> RESULT_SHIFT;
+    }
+
+    /**
+     * @param value value of a position (see {@link #probe(BitBoard)})
+     * @return number of plies until the game ends under perfect play; 0
+     *      for a draw
+     */
+    public static int distanceOf(int value) {
+        return value & DISTANCE_MASK;
+    }
+
+    static int value(int result, int distance) {
+        if (distance > DISTANCE_MASK) {
+            throw new IllegalStateException("Distance too long for a tablebase: " + distance);
+        }
+
+        return (result << RESULT_SHIFT) | distance;
+    }
+
+    /**
+     * @return number of positions with the given pebble counts
+     */
+    static int sizeOf(int pieces0, int pieces1) {
+        return 2 * sChoose[BitBoard.CELLS][pieces0] * sChoose[BitBoard.CELLS - pieces0][pieces1];
+    }
+
+    /**
+     * @return index of the first position with the given pebble counts,
+     *      among all of those in a tablebase; signatures being ordered by
+     *      their total count, then by the count of the player 0
+     */
+    static long offsetOf(int pieces0, int pieces1) {
+        final int total = pieces0 + pieces1;
+        long offset = 0;
+
+        for (int t = 2; t <= total; t++) {
+            for (int n0 = 1; n0 < t; n0++) {
+                if (t == total && n0 == pieces0)
+                    return offset;
+                offset += sizeOf(n0, t - n0);
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * @return number of positions in a tablebase for the given pebbles
+     */
+    static long positionCount(int maxPieces) {
+        return offsetOf(1, maxPieces);// the first signature left out
+    }
+
+    /**
+     * @return index of the given position among those with the same
+     *      pebble counts
+     */
+    static int index(long pieces0, long pieces1, int sideToMove) {
+        final int free = BitBoard.CELLS - Long.bitCount(pieces0);
+        final int rank0 = rank(pieces0);
+        int rank1 = 0;
+        int k = 0;
+
+        /* Cells of the player 1, numbered among the cells not held by the player 0 */
+        while (pieces1 != 0) {
+            final long bit = Long.lowestOneBit(pieces1);
+            final int cell = Long.numberOfTrailingZeros(bit) - Long.bitCount(pieces0 & (bit - 1));
+            rank1 += sChoose[cell][++k];
+            pieces1 ^= bit;
+        }
+
+        return 2 * (rank0 * sChoose[free][k] + rank1) + sideToMove;
+    }
+
+    /**
+     * Rebuilds the position at the given index, as its masks.
+     *
+     * @param pieces0 count of the player 0's pebbles
+     * @param pieces1 count of the player 1's pebbles
+     * @param index
+     * @param masks receives the pebbles of the player 0 & 1
+     * @return the side to move
+     */
+    static int unindex(int pieces0, int pieces1, int index, long[] masks) {
+        final int free = BitBoard.CELLS - pieces0;
+        final int combinations1 = sChoose[free][pieces1];
+        final long mask0 = unrank(index / 2 / combinations1, pieces0);
+        final long compact1 = unrank(index / 2 % combinations1, pieces1);
+        long mask1 = 0;
+
+        /* Spread the compact cells of the player 1 over those left free */
+        long freeCells = BitBoard.ALL_CELLS & ~mask0;
+        for (int cell = 0; cell < free; cell++) {
+            final long bit = Long.lowestOneBit(freeCells);
+            if ((compact1 & (1L << cell)) != 0)
+                mask1 |= bit;
+            freeCells ^= bit;
+        }
+
+        masks[0] = mask0;
+        masks[1] = mask1;
+        return index & 1;
+    }
+
+    /* Colexicographic rank of a combination of cells */
+    private static int rank(long cells) {
+        int rank = 0;
+        int k = 0;
+
+        while (cells != 0) {
+            rank += sChoose[Long.numberOfTrailingZeros(cells)][++k];
+            cells &= cells - 1;
+        }
+
+        return rank;
+    }
+
+    private static long unrank(int rank, int k) {
+        long cells = 0;
+
+        for (; k > 0; k--) {
+            int cell = k - 1;
+            while (sChoose[cell + 1][k] <= rank) {
+                ++cell;
+            }
+
+            rank -= sChoose[cell][k];
+            cells |= 1L << cell;
+        }
+
+        return cells;
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.silcos.permainan.logic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * {@link TablebaseGenerator} solves every position with up to a given
+ * number of pebbles by retrograde analysis, and writes the results into a
+ * file read by {@link Tablebase}. It is run offline, from the command line:
+ *
+ *     TablebaseGenerator [file] [pebbles]
+ *
+ * The tables of fewer pebbles are solved first, as kills lead into them.
+ * Within a table, positions are solved by their distance to the end: the
+ * positions whose side-to-move has no input are lost in 0 plies; then at
+ * each distance d, a position is won in d if an input leads to a position
+ * lost in less, or lost in d if every input leads to a position won in
+ * less. Positions left once no distance solves any more are draws.
+ */
+public final class TablebaseGenerator {
+
+    private static final int DEFAULT_MAX_PIECES = 4;
+
+    /* Solved values of each (pieces0, pieces1) table; 0 for unsolved */
+    private final short[][][] mTables =
+            new short[Tablebase.MAX_PIECES + 1][Tablebase.MAX_PIECES + 1][];
+    private final int mMaxPieces;
+    private int mMaxDistance;
+
+    private final long[] mMasks = new long[2];
+    private final int[] mMoves = new int[MoveGenerator.MAX_MOVES];
+
+    private TablebaseGenerator(int maxPieces) {
+        if (maxPieces < 2 || maxPieces > Tablebase.MAX_PIECES) {
+            throw new IllegalArgumentException("Invalid tablebase size: " + maxPieces + " pebbles");
+        }
+
+        mMaxPieces = maxPieces;
+    }
+
+    public static void main(String[] args) throws IOException {
+        final File file = new File((args.length > 0) ? args[0] : "permainan.tb");
+        final int maxPieces = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_MAX_PIECES;
+
+        final long start = System.nanoTime();
+        generate(maxPieces, file);
+        System.out.println("Wrote " + file + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Solves all the positions with up to the given number of pebbles, and
+     * writes them into a tablebase file.
+     *
+     * @param maxPieces most pebbles, of both players in total
+     * @param file file to be written, which is replaced if it exists
+     * @throws IOException if the file can't be written
+     */
+    public static void generate(int maxPieces, File file) throws IOException {
+        final TablebaseGenerator generator = new TablebaseGenerator(maxPieces);
+        final DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+        try {
+            output.writeInt(Tablebase.MAGIC);
+            output.writeInt(maxPieces);
+
+            /* In the order of Tablebase#offsetOf() */
+            for (int total = 2; total <= maxPieces; total++) {
+                for (int pieces0 = 1; pieces0 < total; pieces0++) {
+                    for (short value : generator.solve(pieces0, total - pieces0)) {
+                        output.writeShort(value);
+                    }
+                }
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private short[] solve(int pieces0, int pieces1) {
+        final int size = Tablebase.sizeOf(pieces0, pieces1);
+        final short[] values = new short[size];
+        final int[] unsolved = new int[size];
+        int unsolvedCount = size;
+
+        mTables[pieces0][pieces1] = values;
+        for (int i = 0; i < size; i++) {
+            unsolved[i] = i;
+        }
+
+        for (int distance = 0; unsolvedCount > 0; distance++) {
+            int left = 0;
+
+            for (int i = 0; i < unsolvedCount; i++) {
+                final int index = unsolved[i];
+                final int value = solve(pieces0, pieces1, index, distance);
+
+                if (value != 0) {
+                    values[index] = (short) value;
+                } else {
+                    unsolved[left++] = index;
+                }
+            }
+
+            if (left < unsolvedCount) {
+                mMaxDistance = Math.max(mMaxDistance, distance);
+            } else if (distance > mMaxDistance) {
+                break;// no input leads to a position solved later
+            }
+
+            unsolvedCount = left;
+        }
+
+        for (int i = 0; i < unsolvedCount; i++) {
+            values[unsolved[i]] = (short) Tablebase.value(Tablebase.DRAW, 0);
+        }
+
+        return values;
+    }
+
+    /**
+     * @return the value of the position if it is won or lost in exactly
+     *      the given distance, otherwise 0
+     */
+    private int solve(int pieces0, int pieces1, int index, int distance) {
+        final int side = Tablebase.unindex(pieces0, pieces1, index, mMasks);
+        final BitBoard board = new BitBoard(mMasks[0], mMasks[1], side);
+        final int count = MoveGenerator.generate(board, mMoves, 0);
+
+        if (count == 0)
+            return Tablebase.value(Tablebase.LOSS, 0);// only left unsolved at distance 0
+        if (distance == 0)
+            return 0;
+
+        boolean lost = true;
+
+        for (int i = 0; i < count; i++) {
+            final int undo = board.makeMove(MoveGenerator.from(mMoves[i]), MoveGenerator.to(mMoves[i]));
+            final int childValue = valueOf(board);
+            board.unmakeMove(undo);
+
+            /* Positions solved at this distance are not looked at yet */
+            if (childValue != 0 && Tablebase.distanceOf(childValue) < distance) {
+                switch (Tablebase.resultOf(childValue)) {
+                    case Tablebase.LOSS:
+                        return Tablebase.value(Tablebase.WIN, distance);
+                    case Tablebase.WIN:
+                        continue;
+                    default:
+                        break;
+                }
+            }
+
+            lost = false;
+        }
+
+        return lost ? Tablebase.value(Tablebase.LOSS, distance) : 0;
+    }
+
+    /**
+     * @return the value of the position so far, or 0 if it is unsolved
+     */
+    private int valueOf(BitBoard position) {
+        final int pieces0 = position.pieceCount(0);
+        final int pieces1 = position.pieceCount(1);
+
+        if (pieces0 == 0 || pieces1 == 0)
+            return Tablebase.value(Tablebase.LOSS, 0);// the last pebble was killed
+
+        return mTables[pieces0][pieces1][Tablebase.index(position.pieces(0), position.pieces(1),
+                position.sideToMove())] & 0xFFFF;
+    }
+
+}
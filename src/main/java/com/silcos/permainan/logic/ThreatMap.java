@@ -0,0 +1,129 @@
+package com.silcos.permainan.logic;
+
+/**
+ * {@link ThreatMap} holds, for each player, the mask of the cells it can
+ * kill a pebble on by a long move; i.e. the pebbles of the other player
+ * that are in danger. It gives the same cells as the captures of
+ * {@link MoveGenerator}, for either player to move.
+ *
+ * The map is built by one pass over each circuit, instead of tracing every
+ * pebble & direction: along a loop (see {@link CircuitTables#LOOPS}), a
+ * pebble can kill the next pebble on it, in either direction, if that is
+ * one of the other player's and an arc lies between the two.
+ *
+ * A map can be {@link #update(BitBoard) updated} to another position, in
+ * which only the circuits whose pebbles changed are passed over again; so
+ * one map should be kept for positions close to each other, like those at
+ * the same ply of a search.
+ */
+public final class ThreatMap {
+
+    private final long[] mThreats = new long[2];
+
+    /* Threats found on each circuit, and the pebbles they were found for */
+    private final long[][] mCircuitThreats = new long[2][2];
+    private final long[][] mCircuitPieces = new long[2][2];
+
+    /* Scratch space: the loop indices holding a pebble */
+    private final int[] mStops = new int[CircuitTables.LOOP_LENGTH];
+
+    public ThreatMap() {
+        for (int circuit = CircuitTables.INNER; circuit <= CircuitTables.OUTER; circuit++) {
+            mCircuitPieces[circuit][0] = -1;// no position passed over yet
+        }
+    }
+
+    public ThreatMap(BitBoard position) {
+        this();
+        update(position);
+    }
+
+    /**
+     * @param playerId
+     * @return mask of the cells on which the given player can kill a
+     *      pebble of the other one by a long move
+     */
+    public long threats(int playerId) {
+        return mThreats[playerId];
+    }
+
+    /**
+     * @param playerId
+     * @return mask of the cells holding a pebble of the given player that
+     *      the other player can kill by a long move
+     */
+    public long inDanger(int playerId) {
+        return mThreats[1 - playerId];
+    }
+
+    /**
+     * Updates this map to the given position.
+     *
+     * @param position
+     */
+    public void update(BitBoard position) {
+        mThreats[0] = 0;
+        mThreats[1] = 0;
+
+        for (int circuit = CircuitTables.INNER; circuit <= CircuitTables.OUTER; circuit++) {
+            final long mask = CircuitTables.CIRCUIT_MASKS[circuit];
+            final long pieces0 = position.pieces(0) & mask;
+            final long pieces1 = position.pieces(1) & mask;
+            final long[] circuitPieces = mCircuitPieces[circuit];
+            final long[] circuitThreats = mCircuitThreats[circuit];
+
+            if (pieces0 != circuitPieces[0] || pieces1 != circuitPieces[1]) {
+                passOver(circuit, pieces0, pieces1, circuitThreats);
+                circuitPieces[0] = pieces0;
+                circuitPieces[1] = pieces1;
+            }
+
+            mThreats[0] |= circuitThreats[0];
+            mThreats[1] |= circuitThreats[1];
+        }
+    }
+
+    private void passOver(int circuit, long pieces0, long pieces1, long[] threats) {
+        final int[] loop = CircuitTables.LOOPS[circuit];
+        final long occupied = pieces0 | pieces1;
+        int stops = 0;
+
+        threats[0] = 0;
+        threats[1] = 0;
+
+        for (int i = 0; i < CircuitTables.LOOP_LENGTH; i++) {
+            if ((occupied & BitBoard.bit(loop[i])) != 0)
+                mStops[stops++] = i;
+        }
+
+        /* A pebble alone on its loop only comes back to itself */
+        if (stops < 2)
+            return;
+
+        for (int k = 0; k < stops; k++) {
+            final int from = mStops[k];
+            final int to = mStops[(k + 1) % stops];
+            final long fromBit = BitBoard.bit(loop[from]);
+            final long toBit = BitBoard.bit(loop[to]);
+
+            if ((pieces0 & fromBit) != 0 == ((pieces0 & toBit) != 0))
+                continue;// same player, or the same pebble on a crossing
+            if (!hasArcBetween(from, to))
+                continue;
+
+            /* from can kill to going forward, & to can kill from going back */
+            final int fromPlayer = ((pieces0 & fromBit) != 0) ? 0 : 1;
+            threats[fromPlayer] |= toBit;
+            threats[1 - fromPlayer] |= fromBit;
+        }
+    }
+
+    /**
+     * @return whether an arc hop lies between two loop indices, going
+     *      forward from the first one; which is the same going back
+     */
+    private static boolean hasArcBetween(int from, int to) {
+        return to <= from || from / 6 != to / 6;
+    }
+
+}
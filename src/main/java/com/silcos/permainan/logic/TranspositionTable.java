@@ -0,0 +1,174 @@
+package com.silcos.permainan.logic;
+
+/**
+ * Fixed-size hash table of search results, keyed by the Zobrist hash of
+ * positions (see {@link Zobrist}). Entries are held in two primitive arrays
+ * & grouped in buckets of two; each entry packs the score, the depth it was
+ * searched to, the type of bound the score is & the best input found.
+ *
+ * The table is meant to live across the turns of a game. Every search
+ * should call {@link #newGeneration()}, so that entries of earlier turns are
+ * replaced before those of the current one.
+ *
+ * Each key is stored XOR-ed with its data, so an entry torn by concurrent
+ * writes fails to match on probe instead of returning corrupt data.
+ */
+public class TranspositionTable {
+
+    public static final int BOUND_EXACT = 1;
+    public static final int BOUND_LOWER = 2;
+    public static final int BOUND_UPPER = 3;
+
+    /**
+     * Size, in bytes, of each entry in the table.
+     */
+    public static final int ENTRY_SIZE = 16;
+
+    /* Data layout: score (32) | depth (8) | bound (2) | generation (6) | move (16) */
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int GENERATION_SHIFT = 42;
+    private static final int MOVE_SHIFT = 48;
+    private static final int GENERATION_MASK = 63;
+
+    private final long[] mKeys;
+    private final long[] mData;
+    private final int mIndexMask;
+    private int mGeneration;
+
+    /**
+     * Creates a table holding as many entries as fit in the given size,
+     * rounded down to a power of two.
+     *
+     * @param sizeInMegabytes
+     */
+    public TranspositionTable(int sizeInMegabytes) {
+        if (sizeInMegabytes <= 0 || sizeInMegabytes > 1024) {
+            throw new IllegalArgumentException("Invalid table size: " + sizeInMegabytes + " MB");
+        }
+
+        final int entries = Integer.highestOneBit((int) ((sizeInMegabytes * 1024L * 1024L) / ENTRY_SIZE));
+        mKeys = new long[entries];
+        mData = new long[entries];
+        mIndexMask = entries - 2;
+    }
+
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    /**
+     * Marks the beginning of a new search, making the entries of earlier
+     * searches preferred for replacement.
+     */
+    public void newGeneration() {
+        mGeneration = (mGeneration + 1) & GENERATION_MASK;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mKeys.length; i++) {
+            mKeys[i] = 0;
+            mData[i] = 0;
+        }
+        mGeneration = 0;
+    }
+
+    /**
+     * Looks up the entry for the given position.
+     *
+     * @param key Zobrist hash of the position
+     * @return the data of the entry, which can be read via the static
+     *      getters of this class; or 0 if there is none
+     */
+    public long probe(long key) {
+        final int index = (int) key & mIndexMask;
+
+        for (int i = index; i < index + 2; i++) {
+            final long data = mData[i];
+            if ((mKeys[i] ^ data) == key && data != 0)
+                return data;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position. Within its bucket, the
+     * entry replaces one for the same position, or else the one from the
+     * oldest search, or else the shallower one.
+     *
+     * @param key Zobrist hash of the position
+     * @param depth remaining depth the position was searched to
+     * @param score
+     * @param bound BOUND_EXACT, BOUND_LOWER or BOUND_UPPER
+     * @param move best input found, packed by {@link MoveGenerator}, or 0
+     */
+    public void store(long key, int depth, int score, int bound, int move) {
+        final int index = (int) key & mIndexMask;
+        int victim = -1;
+
+        /* The same position may sit in either entry, even past an empty one */
+        for (int i = index; i < index + 2; i++) {
+            final long data = mData[i];
+
+            if ((mKeys[i] ^ data) == key && data != 0) {
+                victim = i;
+
+                if (move == 0)
+                    move = moveOf(data);// keep the best move known
+                break;
+            }
+        }
+
+        for (int i = index; i < index + 2 && victim == -1; i++) {
+            if (mData[i] == 0)
+                victim = i;
+        }
+
+        if (victim == -1) {
+            int victimRank = Integer.MAX_VALUE;
+
+            for (int i = index; i < index + 2; i++) {
+                final long data = mData[i];
+
+                /* Entries of older searches go first, then shallower ones */
+                final int age = (mGeneration - generationOf(data)) & GENERATION_MASK;
+                final int rank = depthOf(data) - age * 256;
+                if (rank < victimRank) {
+                    victim = i;
+                    victimRank = rank;
+                }
+            }
+        }
+
+        final long data = (score & 0xFFFFFFFFL)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) mGeneration << GENERATION_SHIFT)
+                | ((long) (move & 0xFFFF) << MOVE_SHIFT);
+
+        mKeys[victim] = key ^ data;
+        mData[victim] = data;
+    }
+
+    public static int scoreOf(long data) {
+        return (int) data;
+    }
+
+    public static int depthOf(long data) {
+        return (int) ((data >>> DEPTH_SHIFT) & 0xFF);
+    }
+
+    public static int boundOf(long data) {
+        return (int) ((data >>> BOUND_SHIFT) & 3);
+    }
+
+    public static int moveOf(long data) {
+        return (int) ((data >>> MOVE_SHIFT) & 0xFFFF);
+    }
+
+    private static int generationOf(long data) {
+        return (int) ((data >>> GENERATION_SHIFT) & GENERATION_MASK);
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.silcos.permainan.logic;
+
+/**
+ * {@link Zobrist} provides the 64-bit keys used to hash Permainan
+ * positions. The hash of a position is the XOR of the key of each
+ * (cell, player) pebble on the board, and of {@link #SIDE_TO_MOVE} if
+ * the player 1 moves next; so it can be updated incrementally as pebbles
+ * move, get killed & as turns pass.
+ *
+ * The keys are generated from a fixed seed, so hashes are the same on
+ * every run & on every peer of a networked game.
+ */
+public final class Zobrist {
+
+    private static final long SEED = 0x5045524d41494e41L;
+
+    private static final long[] sPieceKeys = new long[2 * BitBoard.CELLS];
+
+    /**
+     * Key toggled whenever the turn passes to the other player.
+     */
+    public static final long SIDE_TO_MOVE;
+
+    static {
+        long state = SEED;
+
+        for (int i = 0; i < sPieceKeys.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            sPieceKeys[i] = mix(state);
+        }
+
+        state += 0x9E3779B97F4A7C15L;
+        SIDE_TO_MOVE = mix(state);
+    }
+
+    /* SplitMix64 finalizer */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return key of a pebble of the given player on the given cell
+     */
+    public static long pieceKey(int playerId, int cell) {
+        return sPieceKeys[playerId * BitBoard.CELLS + cell];
+    }
+
+    /**
+     * @return key for moving a pebble of the given player between two
+     *      cells, to be XOR-ed into a hash
+     */
+    public static long moveKey(int playerId, int from, int to) {
+        return sPieceKeys[playerId * BitBoard.CELLS + from] ^ sPieceKeys[playerId * BitBoard.CELLS + to];
+    }
+
+    /**
+     * Computes the hash of a position from scratch.
+     *
+     * @param pieces0 pebbles of the player 0
+     * @param pieces1 pebbles of the player 1
+     * @param sideToMove
+     * @return
+     */
+    public static long hash(long pieces0, long pieces1, int sideToMove) {
+        long hash = (sideToMove == 0) ? 0 : SIDE_TO_MOVE;
+
+        while (pieces0 != 0) {
+            hash ^= sPieceKeys[Long.numberOfTrailingZeros(pieces0)];
+            pieces0 &= pieces0 - 1;
+        }
+        while (pieces1 != 0) {
+            hash ^= sPieceKeys[BitBoard.CELLS + Long.numberOfTrailingZeros(pieces1)];
+            pieces1 &= pieces1 - 1;
+        }
+
+        return hash;
+    }
+
+    public static long hash(BitBoard position) {
+        return hash(position.pieces(0), position.pieces(1), position.sideToMove());
+    }
+
+    private Zobrist() {
+    }
+
+}
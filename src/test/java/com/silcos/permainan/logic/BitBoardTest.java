@@ -0,0 +1,51 @@
+package com.silcos.permainan.logic;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitBoardTest {
+
+    /* Random inputs played from each position of the corpus */
+    private static final int WALK_LENGTH = 200;
+
+    private static void assertEval(BitBoard position) {
+        assertEquals(position.toNotation(), GridAnalyzer.eval(position), position.eval());
+    }
+
+    @Test
+    public void incrementalEvalMatchesFullScan() {
+        final Random random = new Random(0);
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            final BitBoard board = new BitBoard(position);
+
+            for (int i = 0; i < WALK_LENGTH; i++) {
+                final int count = MoveGenerator.generate(board, moves, 0);
+                if (count == 0)
+                    break;
+
+                for (int j = 0; j < count; j++) {
+                    final int from = MoveGenerator.from(moves[j]);
+                    final int to = MoveGenerator.to(moves[j]);
+
+                    assertEval(board.doMove(from, to));
+                    board.unmakeMove(board.makeMove(from, to));
+                    assertEval(board);
+                }
+
+                final int move = moves[random.nextInt(count)];
+                board.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMorePebblesThanAPlayerHas() {
+        BitBoard.parse("rrrrrr/rrrrrr/r...../....../bbbbbb/bbbbbb r");
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.silcos.permainan.logic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MctsSearchTest {
+
+    private static final int NODE_CAPACITY = 1 << 14;
+    private static final int PLAYOUTS = 2000;
+
+    private static MctsSearch newSearch(long seed) {
+        final MctsSearch search = new MctsSearch(NODE_CAPACITY);
+        search.setPlayoutBudget(PLAYOUTS);
+        search.setRandomSeed(seed);
+        return search;
+    }
+
+    @Test
+    public void killsTheLastPebble() {
+        final BitBoard position = BitBoard.parse("....../....../..r.../..b.../....../...... r");
+        final GridChangeInput input = newSearch(0).findBestInput(position);
+
+        assertTrue(input.mIsLongMove);
+        assertEquals(1, input.mOtherPebblesCleared);
+    }
+
+    @Test
+    public void findsNoInputWhenBlocked() {
+        /* Red's only pebble is cornered, & can't long-move from a corner */
+        final BitBoard position = BitBoard.parse("rb..../bb..../....../....../....../...... r");
+
+        assertTrue(newSearch(0).findBestInput(position) == null);
+    }
+
+    @Test
+    public void seededSearchesReplay() {
+        final MctsSearch first = newSearch(5);
+        final MctsSearch second = newSearch(5);
+
+        for (BitBoard position : PositionCorpus.parse(PositionCorpus.MIDDLEGAME)) {
+            PermainanSearchTest.assertSameInput(position.toNotation(),
+                    first.findBestInput(position), second.findBestInput(position));
+            assertEquals(first.nodeCount(), second.nodeCount());
+            assertEquals(PLAYOUTS, first.playoutCount());
+        }
+    }
+
+    @Test
+    public void nodeCountStaysWithinCapacity() {
+        final MctsSearch search = newSearch(0);
+        search.setNodeCapacity(64);
+
+        search.findBestInput(BitBoard.initialPosition());
+        assertTrue(search.nodeCount() <= 64);
+        assertEquals(PLAYOUTS, search.playoutCount());
+    }
+
+    @Test
+    public void closeShutsThreadsDown() {
+        final MctsSearch search = newSearch(0);
+        search.setThreadCount(3);
+
+        search.findBestInput(BitBoard.initialPosition());
+        search.close();
+        assertEquals(1, search.getThreadCount());
+        assertTrue(search.findBestInput(BitBoard.initialPosition()) != null);
+    }
+
+}
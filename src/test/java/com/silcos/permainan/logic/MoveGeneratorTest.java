@@ -0,0 +1,81 @@
+package com.silcos.permainan.logic;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MoveGeneratorTest {
+
+    private static final int RANDOM_POSITIONS = 20000;
+
+    /**
+     * @return a position with 1 to {@link BitBoard#MAX_PIECES} pebbles of
+     *      each player on random cells
+     */
+    static BitBoard randomPosition(Random random) {
+        final long[] pieces = new long[2];
+
+        for (int id = 0; id < 2; id++) {
+            final int count = 1 + random.nextInt(BitBoard.MAX_PIECES);
+
+            while (Long.bitCount(pieces[id]) < count) {
+                final long bit = BitBoard.bit(random.nextInt(BitBoard.CELLS));
+                if (((pieces[0] | pieces[1]) & bit) == 0)
+                    pieces[id] |= bit;
+            }
+        }
+
+        return new BitBoard(pieces[0], pieces[1], random.nextInt(2));
+    }
+
+    private static void assertSameMoves(BitBoard position, int[] moves) {
+        final int count = MoveGenerator.generate(position, moves, 0);
+        final List<GridChangeInput> inputs =
+                GridAnalyzer.findAllInputs(position.sideToMove(), position, false, null);
+
+        assertTrue(position.toNotation(), count <= MoveGenerator.MAX_MOVES);
+        assertEquals(position.toNotation(), inputs.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(position.toNotation() + " input " + i,
+                    MoveGenerator.fromInput(inputs.get(i)), moves[i]);
+        }
+    }
+
+    @Test
+    public void generatesSameInputsAsGridAnalyzer() {
+        final Random random = new Random(0);
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        for (int i = 0; i < RANDOM_POSITIONS; i++) {
+            assertSameMoves(randomPosition(random), moves);
+        }
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            assertSameMoves(position, moves);
+        }
+    }
+
+    @Test
+    public void stagesAddUpToAllMoves() {
+        final Random random = new Random(1);
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        for (int i = 0; i < RANDOM_POSITIONS; i++) {
+            final BitBoard position = randomPosition(random);
+            final int count = MoveGenerator.generate(position, moves, 0);
+
+            int staged = MoveGenerator.generate(position, moves, 0, MoveGenerator.CAPTURES);
+            for (int j = 0; j < staged; j++) {
+                assertTrue(position.toNotation(), MoveGenerator.kills(moves[j]) != 0);
+            }
+            staged = MoveGenerator.generate(position, moves, staged, MoveGenerator.QUIET_LONG_MOVES);
+            staged = MoveGenerator.generate(position, moves, staged, MoveGenerator.SIMPLE_MOVES);
+
+            assertEquals(position.toNotation(), count, staged);
+        }
+    }
+
+}
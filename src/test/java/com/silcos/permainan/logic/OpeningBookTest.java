@@ -0,0 +1,101 @@
+package com.silcos.permainan.logic;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpeningBookTest {
+
+    /* Inputs added per position, weighing 1, 2, 3... */
+    private static final int INPUTS_PER_POSITION = 3;
+
+    private static final int PICKS_PER_POSITION = 600;
+
+    private static List<BitBoard> sPositions;
+    private static final Map<BitBoard, Set<Integer>> sMoves = new HashMap<>();
+    private static final Map<BitBoard, Integer> sHeaviestMoves = new HashMap<>();
+
+    private static OpeningBookBuilder sBuilder;
+    private static File sFile;
+    private static OpeningBook sBook;
+
+    @BeforeClass
+    public static void build() throws IOException {
+        sPositions = PositionCorpus.allPositions();
+        sBuilder = new OpeningBookBuilder();
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+        for (BitBoard position : sPositions) {
+            final int count = Math.min(INPUTS_PER_POSITION, MoveGenerator.generate(position, moves, 0));
+            final Set<Integer> added = new HashSet<>();
+
+            for (int i = 0; i < count; i++) {
+                sBuilder.add(position, moves[i], i + 1);
+                added.add(moves[i]);
+            }
+
+            sMoves.put(position, added);
+            sHeaviestMoves.put(position, moves[count - 1]);
+        }
+
+        sFile = File.createTempFile("permainan", ".book");
+        sBuilder.write(sFile);
+        sBook = OpeningBook.open(sFile);
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        sBook = null;
+        sFile.delete();
+    }
+
+    @Test
+    public void writeThenOpenKeepsEveryEntry() {
+        assertEquals(sBuilder.size(), sBook.size());
+    }
+
+    @Test
+    public void findsPositionsByHash() {
+        for (BitBoard position : sPositions) {
+            assertEquals(position.toNotation(), (int) sHeaviestMoves.get(position), sBook.pick(position, null));
+        }
+
+        final BitBoard absent = BitBoard.parse("r...../....../....../....../....../.....b r");
+        assertEquals(0, sBook.pick(absent, null));
+        assertEquals(0, sBook.pick(absent, new Random(0)));
+    }
+
+    @Test
+    public void picksOnlyStoredInputsByWeight() {
+        final Random random = new Random(0);
+
+        for (BitBoard position : sPositions) {
+            final Set<Integer> stored = sMoves.get(position);
+            final Map<Integer, Integer> picks = new HashMap<>();
+
+            for (int i = 0; i < PICKS_PER_POSITION; i++) {
+                final int move = sBook.pick(position, random);
+                assertTrue(position.toNotation(), stored.contains(move));
+                picks.put(move, (picks.containsKey(move) ? picks.get(move) : 0) + 1);
+            }
+
+            assertEquals(position.toNotation(), stored, picks.keySet());
+            for (int move : stored) {
+                assertTrue(position.toNotation(), picks.get(move) <= picks.get(sHeaviestMoves.get(position)));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.silcos.permainan.logic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PerftTest {
+
+    /**
+     * Known-good perft counts: each position is followed by its
+     * {nodes, simple moves, long moves, captures} at depth 1, 2 ...
+     * These were cross-checked against the generator on state-caches & the
+     * original long-move tracer.
+     */
+    private static final Object[][] PERFT_COUNTS = {
+            {"rrrrrr/rrrrrr/....../....../bbbbbb/bbbbbb r",
+                    new long[]{28, 16, 12, 0},
+                    new long[]{784, 448, 336, 0},
+                    new long[]{25622, 16886, 8736, 0},
+                    new long[]{825328, 541674, 283654, 2942}},
+            {".....r/rrrr.b/r.rr.r/bbrr../.bb.bb/bbb..b b",
+                    new long[]{35, 23, 12, 0},
+                    new long[]{1555, 1096, 459, 17},
+                    new long[]{52627, 35422, 17205, 1219}},
+            {"rr..rr/.r.rr./b..rrr/....b./bbbbb./bb.b.b b",
+                    new long[]{54, 30, 24, 0},
+                    new long[]{1805, 1442, 363, 7},
+                    new long[]{89390, 53768, 35622, 1012}},
+            {".....r/....../...r../....../.b..b./b....b r",
+                    new long[]{55, 11, 44, 0},
+                    new long[]{2652, 963, 1689, 27},
+                    new long[]{133705, 24979, 108726, 2891}},
+    };
+
+    private static void assertCounts(String message, long[] expected, Perft.Result result) {
+        assertEquals(message + " nodes", expected[0], result.mNodes);
+        assertEquals(message + " simple moves", expected[1], result.mSimpleMoves);
+        assertEquals(message + " long moves", expected[2], result.mLongMoves);
+        assertEquals(message + " captures", expected[3], result.mCaptures);
+    }
+
+    @Test
+    public void moveGeneratorMatchesKnownCounts() {
+        for (Object[] counts : PERFT_COUNTS) {
+            final BitBoard position = BitBoard.parse((String) counts[0]);
+
+            for (int depth = 1; depth < counts.length; depth++) {
+                assertCounts(counts[0] + " at depth " + depth, (long[]) counts[depth],
+                        Perft.perft(position, depth));
+            }
+        }
+    }
+
+    @Test
+    public void gridAnalyzerMatchesKnownCounts() {
+        for (Object[] counts : PERFT_COUNTS) {
+            final BitBoard position = BitBoard.parse((String) counts[0]);
+
+            for (int depth = 1; depth < counts.length; depth++) {
+                assertCounts(counts[0] + " at depth " + depth, (long[]) counts[depth],
+                        Perft.perftByInputs(position, depth));
+            }
+        }
+    }
+
+    @Test
+    public void generatorsMatchOnCorpus() {
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            final Perft.Result result = Perft.perft(position, 2);
+            final Perft.Result byInputs = Perft.perftByInputs(position, 2);
+
+            assertTrue(position.toNotation() + ": " + result + " & " + byInputs, result.matches(byInputs));
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardGame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PermainanGameTest {
+
+    /* Player counting the turns given to it & taken back */
+    private static class TurnCountingPlayer extends HumanPermainanPlayer {
+
+        int mTurns;
+        int mCancelledTurns;
+
+        TurnCountingPlayer(int id, PermainanGame game) {
+            super(id, game, PermainanGame.extractController(game));
+        }
+
+        @Override
+        public void onTurn() {
+            super.onTurn();
+            ++mTurns;
+        }
+
+        @Override
+        public void cancelTurn() {
+            ++mCancelledTurns;
+        }
+
+    }
+
+    private PermainanGame mGame;
+    private PermainanGame.InputController mController;
+    private TurnCountingPlayer[] mPlayers;
+
+    @Before
+    public void setUp() {
+        mGame = new PermainanGame();
+        mGame.setHeadless(true);
+        mController = PermainanGame.extractController(mGame);
+        mPlayers = new TurnCountingPlayer[]{new TurnCountingPlayer(0, mGame), new TurnCountingPlayer(1, mGame)};
+        PermainanGame.wirePlayers(mGame, mPlayers[0], mPlayers[1]);
+    }
+
+    private void assertRestored(BitBoard position) {
+        assertEquals(position, mGame.position());
+        assertEquals(Zobrist.hash(position), mGame.positionHash());
+
+        for (int id = 0; id < 2; id++) {
+            assertEquals(position.pieceCount(id), mGame.getPlayerStat(id).livePieces());
+        }
+        assertTrue(!mGame.isDead());
+    }
+
+    @Test
+    public void restoresSnapshotWithMorePebbles() {
+        final BitBoard fewer = BitBoard.parse("r...../....../....../....../....../.....b r");
+        mController.restorePosition(fewer);
+        assertRestored(fewer);
+
+        final BitBoard more = BitBoard.parse("rrrrrr/rr..../....../....../...bbb/bbbbbb b");
+        mController.restorePosition(more);
+        assertRestored(more);
+    }
+
+    @Test
+    public void killAfterRestoringMorePebblesIsNotGameOver() {
+        mController.restorePosition(BitBoard.parse("....../....../..r.../..b.../....../...... r"));
+
+        /* Red could kill the last black pebble, but black has got another */
+        final BitBoard position = BitBoard.parse("....../....../..r.../..b.../....../b..... r");
+        mController.restorePosition(position);
+
+        final GridChangeInput kill = new PermainanSearch().findBestInput(position, 1);
+        assertTrue(kill.mIsLongMove);
+        assertTrue(mController.placeLongMove(kill.mLongMoveInitialDir, kill.mFromCell.row(),
+                kill.mFromCell.column(), kill.mToCell.row(), kill.mToCell.column()));
+
+        assertEquals(1, mGame.position().pieceCount(1));
+        assertEquals(1, mGame.getPlayerStat(1).livePieces());
+        assertTrue(!mGame.isDead());
+    }
+
+    @Test
+    public void restoringGivesTheTurnAgain() {
+        final BitBoard position = BitBoard.parse("rrrrrr/rrrrrr/....../....../bbbbbb/bbbbbb r");
+        mController.restorePosition(position);
+
+        assertEquals(1, mPlayers[0].mTurns);
+        assertEquals(1, mPlayers[0].mCancelledTurns);
+        assertEquals(1, mPlayers[1].mCancelledTurns);
+        assertEquals(0, mPlayers[1].mTurns);
+
+        mController.restorePosition(BitBoard.parse("rrrrrr/rrrrrr/....../....../bbbbbb/bbbbbb b"));
+        assertEquals(1, mPlayers[1].mTurns);
+        assertEquals(1, mGame.position().sideToMove());
+    }
+
+    @Test
+    public void restoringPositionWithoutPebblesFinishesGame() {
+        mController.restorePosition(BitBoard.parse("r...../....../....../....../....../...... b"));
+
+        assertTrue(mGame.isDead());
+        assertEquals(0, mPlayers[1].mTurns);
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardGame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PermainanModulatorTest {
+
+    /* Networked player counting the moves delivered to it */
+    private static class CountingPlayer extends PermainanPlayer {
+
+        int mDelivered;
+
+        CountingPlayer(PermainanGame game) {
+            super(game, PermainanGame.extractController(game));
+            mId = 1;
+        }
+
+        @Override
+        public boolean deliverMove(int srcRow, int srcCol, int dstRow, int dstCol) {
+            ++mDelivered;
+            return true;
+        }
+
+    }
+
+    private final byte[] mMessage = new byte[PermainanModulator.MAX_BINARY_LENGTH];
+
+    private PermainanGame mGame;
+    private CountingPlayer mPlayer;
+    private PermainanModulator mPeer;
+    private PermainanModulator mReceiver;
+
+    @Before
+    public void setUp() {
+        mGame = new PermainanGame();
+        final BoardGame.GameInputController inputController = PermainanGame.extractController(mGame);
+
+        mPlayer = new CountingPlayer(mGame);
+        PermainanGame.wirePlayers(mGame, new HumanPermainanPlayer(0, mGame, inputController), mPlayer);
+        mPeer = new PermainanModulator();
+        mReceiver = new PermainanModulator(mPlayer);
+    }
+
+    /* Sends a move from the peer, and gets it decoded */
+    private void sendMove() {
+        mPeer.encodeMoveTask(2, 3, 3, 4, mMessage, 0);
+        mReceiver.decodeMoveTask(mMessage, 0);
+    }
+
+    @Test
+    public void deliversMessagesInSequence() {
+        for (int i = 1; i <= 3; i++) {
+            sendMove();
+            assertEquals(i, mPlayer.mDelivered);
+            assertEquals(i, mReceiver.receivedSequence());
+        }
+
+        assertTrue(!mReceiver.isDesynced());
+    }
+
+    @Test
+    public void dropsRepeatedMessages() {
+        sendMove();
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertEquals(1, mPlayer.mDelivered);
+        assertTrue(!mReceiver.isDesynced());
+
+        sendMove();
+        assertEquals(2, mPlayer.mDelivered);
+    }
+
+    @Test
+    public void gapDesyncs() {
+        sendMove();
+        mPeer.encodeMoveTask(2, 3, 3, 4, mMessage, 0);// lost
+        sendMove();
+
+        assertEquals(1, mPlayer.mDelivered);
+        assertTrue(mReceiver.isDesynced());
+        assertEquals(3, mReceiver.receivedSequence());
+    }
+
+    @Test
+    public void checkpointAfterGapDesyncs() {
+        mPeer.encodeMoveTask(2, 3, 3, 4, mMessage, 0);// lost
+        mPeer.encodeCheckpoint(mGame, mMessage, 0);
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertTrue(mReceiver.isDesynced());
+    }
+
+    @Test
+    public void checkpointInSequenceMatches() {
+        sendMove();
+        mPeer.encodeCheckpoint(mGame, mMessage, 0);
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertTrue(!mReceiver.isDesynced());
+    }
+
+    @Test
+    public void offGridMoveDesyncs() {
+        mPeer.encodeMoveTask(2, 3, 6, 4, mMessage, 0);
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertEquals(0, mPlayer.mDelivered);
+        assertTrue(mReceiver.isDesynced());
+    }
+
+    @Test
+    public void invalidDirectionDesyncs() {
+        mPeer.encodeLongMoveTask(PermainanGrid.DOWN, 1, 2, mMessage, 0);
+        mMessage[3] = 0x0F;
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertTrue(mReceiver.isDesynced());
+    }
+
+    @Test
+    public void invalidSnapshotDesyncs() {
+        final BitBoard local = mGame.position();
+        mPeer.encodeSnapshot(mGame, mMessage, 0);
+        mMessage[2] |= 0x20;// side to move 2
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertTrue(mReceiver.isDesynced());
+        assertEquals(local, mGame.position());
+    }
+
+    @Test
+    public void snapshotResyncs() {
+        final PermainanGame peerGame = new PermainanGame();
+        final BoardGame.GameInputController peerController = PermainanGame.extractController(peerGame);
+        PermainanGame.wirePlayers(peerGame, new HumanPermainanPlayer(0, peerGame, peerController),
+                new HumanPermainanPlayer(1, peerGame, peerController));
+
+        PermainanGame.extractController(mGame).restorePosition(
+                BitBoard.parse("r...../....../....../....../....../.....b r"));
+        mPeer.encodeMoveTask(2, 3, 3, 4, mMessage, 0);// lost
+        sendMove();
+        assertTrue(mReceiver.isDesynced());
+
+        mPeer.encodeSnapshot(peerGame, mMessage, 0);
+        mReceiver.decodeMoveTask(mMessage, 0);
+
+        assertTrue(!mReceiver.isDesynced());
+        assertEquals(peerGame.position(), mGame.position());
+        assertEquals(peerGame.positionHash(), mGame.positionHash());
+        assertEquals(12, mGame.getPlayerStat(0).livePieces());
+        assertEquals(12, mGame.getPlayerStat(1).livePieces());
+
+        sendMove();
+        assertEquals(1, mPlayer.mDelivered);
+    }
+
+    @Test
+    public void sequenceWrapsAround() {
+        for (int i = 0; i <= PermainanModulator.SEQUENCE_MASK + 1; i++) {
+            sendMove();
+        }
+
+        assertEquals(PermainanModulator.SEQUENCE_MASK + 2, mPlayer.mDelivered);
+        assertEquals(1, mReceiver.receivedSequence());
+        assertTrue(!mReceiver.isDesynced());
+    }
+
+}
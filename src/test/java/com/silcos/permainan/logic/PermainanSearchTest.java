@@ -0,0 +1,225 @@
+package com.silcos.permainan.logic;
+
+import com.silcos.board.BoardGame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PermainanSearchTest {
+
+    /* The depth onTurn() searches state-caches to */
+    private static final int LEGACY_DEPTH = 3;
+
+    /* Minimax takes long beyond this */
+    private static final int MINIMAX_DEPTH = 2;
+
+    /* Differently shuffled root orders searched per position */
+    private static final int SEEDS_PER_POSITION = 3;
+
+    private static final int PARALLEL_THREADS = 4;
+
+    private PermainanGame mScratchGame;
+    private CompPermainanPlayer mLegacy;
+
+    @Before
+    public void setUp() {
+        mScratchGame = new PermainanGame();
+        final BoardGame.GameInputController inputController = PermainanGame.extractController(mScratchGame);
+
+        PermainanGame.wirePlayers(mScratchGame, new HumanPermainanPlayer(0, mScratchGame, inputController),
+                new HumanPermainanPlayer(1, mScratchGame, inputController));
+        mLegacy = new CompPermainanPlayer(0, mScratchGame, inputController);
+        mLegacy.setRandomTieBreaking(false);
+    }
+
+    private int legacyScore(BitBoard position) {
+        return mLegacy.searchStateCache(position.sideToMove(), position.toCache(mScratchGame));
+    }
+
+    static void assertSameInput(String message, GridChangeInput expected, GridChangeInput actual) {
+        if (expected == null || actual == null) {
+            assertTrue(message, expected == actual);
+            return;
+        }
+
+        assertEquals(message, expected.mIsLongMove, actual.mIsLongMove);
+        assertEquals(message, expected.mLongMoveInitialDir, actual.mLongMoveInitialDir);
+        assertEquals(message, expected.mFromCell.row(), actual.mFromCell.row());
+        assertEquals(message, expected.mFromCell.column(), actual.mFromCell.column());
+        assertEquals(message, expected.mToCell.row(), actual.mToCell.row());
+        assertEquals(message, expected.mToCell.column(), actual.mToCell.column());
+    }
+
+    /**
+     * @return a position with 1 to 3 pebbles of each player, so that
+     *      searches often run into a player losing all of them
+     */
+    private static BitBoard randomEndgame(Random random) {
+        final long[] pieces = new long[2];
+
+        for (int id = 0; id < 2; id++) {
+            final int count = 1 + random.nextInt(3);
+
+            while (Long.bitCount(pieces[id]) < count) {
+                final long bit = BitBoard.bit(random.nextInt(BitBoard.CELLS));
+                if (((pieces[0] | pieces[1]) & bit) == 0)
+                    pieces[id] |= bit;
+            }
+        }
+
+        return new BitBoard(pieces[0], pieces[1], random.nextInt(2));
+    }
+
+    @Test
+    public void lossWithoutQuiescenceIsScoredAsLoss() {
+        /* Red kills the last black pebble by a long move */
+        final BitBoard position = BitBoard.parse("....../....../..r.../..b.../....../...... r");
+        final PermainanSearch search = new PermainanSearch();
+        search.setQuiescence(false);
+
+        search.findBestInput(position, 1);
+        assertEquals(PermainanSearch.WIN_SCORE - 1, search.bestScore());
+
+        mLegacy.setQuiescence(false);
+        assertEquals(PermainanSearch.WIN_SCORE - 1, legacyScore(position));
+    }
+
+    @Test
+    public void matchesStateCacheSearchWhenPebblesRunOut() {
+        final Random random = new Random(1);
+        final PermainanSearch search = new PermainanSearch(new TranspositionTable(1));
+        int decided = 0;
+
+        for (boolean quiescence : new boolean[]{false, true}) {
+            search.setQuiescence(quiescence);
+            mLegacy.setQuiescence(quiescence);
+
+            for (int i = 0; i < 200; i++) {
+                final BitBoard position = randomEndgame(random);
+
+                search.findBestInput(position, LEGACY_DEPTH);
+                assertEquals(position.toNotation() + (quiescence ? " with" : " without") + " quiescence",
+                        legacyScore(position), search.bestScore());
+
+                if (Math.abs(search.bestScore()) > PermainanSearch.WIN_SCORE - PermainanSearch.MAX_DEPTH)
+                    decided++;
+            }
+        }
+
+        assertTrue("No position was decided within the search", decided > 0);
+    }
+
+    @Test
+    public void matchesStateCacheSearchOnCorpus() {
+        final PermainanSearch search = new PermainanSearch(new TranspositionTable(1));
+
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            search.findBestInput(position, LEGACY_DEPTH);
+            assertEquals(position.toNotation(), legacyScore(position), search.bestScore());
+        }
+    }
+
+    @Test
+    public void matchesMinimaxOnCorpus() {
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            for (int seed = 0; seed < SEEDS_PER_POSITION; seed++) {
+                final PermainanSearch minimax = new PermainanSearch();
+                minimax.setRandomSeed(seed);
+                final GridChangeInput expected = minimax.findBestInputByMinimax(position, MINIMAX_DEPTH);
+
+                final PermainanSearch search = new PermainanSearch(new TranspositionTable(1));
+                search.setRandomSeed(seed);
+                final GridChangeInput actual = search.findBestInput(position, MINIMAX_DEPTH);
+
+                final String message = position.toNotation() + " (seed " + seed + ")";
+                assertSameInput(message, expected, actual);
+                assertEquals(message, minimax.bestScore(), search.bestScore());
+                assertTrue(message, search.nodeCount() <= minimax.nodeCount());
+            }
+        }
+    }
+
+    @Test
+    public void deepeningPicksSameInputAsFixedDepth() {
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            for (int seed = 0; seed < SEEDS_PER_POSITION; seed++) {
+                final PermainanSearch fixed = new PermainanSearch(new TranspositionTable(1));
+                fixed.setRandomSeed(seed);
+                final GridChangeInput expected = fixed.findBestInput(position, LEGACY_DEPTH);
+
+                final PermainanSearch deepening = new PermainanSearch(new TranspositionTable(1));
+                deepening.setRandomSeed(seed);
+                final GridChangeInput actual = deepening.findBestInput(position, LEGACY_DEPTH, 0, 0);
+
+                final String message = position.toNotation() + " (seed " + seed + ")";
+                assertSameInput(message, expected, actual);
+                assertEquals(message, fixed.bestScore(), deepening.bestScore());
+            }
+        }
+    }
+
+    @Test
+    public void parallelSearchMatchesSerial() {
+        final PermainanSearch parallel = new PermainanSearch(new TranspositionTable(1));
+        parallel.setThreadCount(PARALLEL_THREADS);
+
+        try {
+            for (BitBoard position : PositionCorpus.allPositions()) {
+                for (int seed = 0; seed < SEEDS_PER_POSITION; seed++) {
+                    final PermainanSearch serial = new PermainanSearch(new TranspositionTable(1));
+                    serial.setRandomSeed(seed);
+                    final GridChangeInput expected = serial.findBestInput(position, MINIMAX_DEPTH);
+
+                    parallel.setRandomSeed(seed);
+                    final GridChangeInput actual = parallel.findBestInput(position, MINIMAX_DEPTH);
+
+                    final String message = position.toNotation() + " (seed " + seed + ")";
+                    assertSameInput(message, expected, actual);
+                    assertEquals(message, serial.bestScore(), parallel.bestScore());
+                }
+            }
+        } finally {
+            parallel.close();
+        }
+
+        assertEquals(1, parallel.getThreadCount());
+    }
+
+    @Test
+    public void stoppingGameClosesPlayerThreads() {
+        final PermainanGame game = new PermainanGame();
+        final BoardGame.GameInputController inputController = PermainanGame.extractController(game);
+        final CompPermainanPlayer player = new CompPermainanPlayer(1, game, inputController);
+
+        PermainanGame.wirePlayers(game, new HumanPermainanPlayer(0, game, inputController), player);
+        player.setSearchThreads(PARALLEL_THREADS);
+        player.setPondering(true);
+
+        game.stopGame();
+        assertEquals(1, player.getSearchThreads());
+        assertTrue(!player.isPondering());
+    }
+
+    @Test
+    public void escapesFirstIsOffUnlessSet() {
+        final PermainanSearch search = new PermainanSearch();
+        search.setThreatWeight(5);
+        assertTrue(!search.isEscapesFirst());
+
+        final BitBoard position = PositionCorpus.parse(PositionCorpus.MIDDLEGAME).get(0);
+        search.setRandomSeed(0);
+        final GridChangeInput expected = search.findBestInput(position, LEGACY_DEPTH);
+        final int expectedScore = search.bestScore();
+
+        search.setEscapesFirst(true);
+        search.setRandomSeed(0);
+        assertSameInput(position.toNotation(), expected, search.findBestInput(position, LEGACY_DEPTH));
+        assertEquals(expectedScore, search.bestScore());
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.silcos.permainan.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PositionCorpus} is a fixed set of positions, taken from games
+ * played by the engine, over which the engine is validated & measured.
+ * Positions are in the notation of {@link BitBoard#toNotation()}.
+ */
+public final class PositionCorpus {
+
+    public static final String[] OPENING = {
+            "rrrrrr/rrrrrr/....../....../bbbbbb/bbbbbb r",
+            "rrrr.r/rr.rrr/..rr../.b..../bbbbbb/bb.bbb r",
+            "rrrrrr/rr..rr/..rrb./..bb../bb.bb./bbb.bb r",
+            "rr.rrr/rr.rrr/..rr../.bbb../.bb.bb/bb.bbb r",
+            "rr..rr/rr..rr/.rrr.r/b.bb.b/.b.bbb/bbb..b r"
+    };
+
+    public static final String[] MIDDLEGAME = {
+            ".....r/rrrr.b/r.rr.r/bbrr../.bb.bb/bbb..b b",
+            "rr..r./.r..r./rbrrrr/.bbb../.b.rbb/b..b.b b",
+            ".r..rr/rr..rr/rbrr../b..bbb/.b.rb./b.bb.b b",
+            "rr..rr/.r.rr./b..rrr/....b./bbbbb./bb.b.b b",
+            "rrrr../rr..rr/r.br../.bbr../.b.rbb/bb..bb b",
+            "rrr.rr/rr.r../r.bb.r/.b..../bb..b./bb.bbb b"
+    };
+
+    public static final String[] ENDGAME = {
+            ".....r/....../.rrr../...r../....r./b....b r",
+            ".....r/....../...r../....../.b..b./b....b r",
+            "....../.r..r./..r.../..rr../.b..../b...b. b",
+            "....../.r..r./..r.r./....../.r..r./.b...b r",
+            "r...../....../...r../...r../....b./b....b r",
+            "....../.r..r./....../...r../.b..b./b....b r"
+    };
+
+    /**
+     * @return all the positions of the corpus, parsed
+     */
+    public static List<BitBoard> allPositions() {
+        final List<BitBoard> positions = new ArrayList<>();
+        positions.addAll(parse(OPENING));
+        positions.addAll(parse(MIDDLEGAME));
+        positions.addAll(parse(ENDGAME));
+        return positions;
+    }
+
+    public static List<BitBoard> parse(String[] notations) {
+        final List<BitBoard> positions = new ArrayList<>();
+        for (String notation : notations) {
+            positions.add(BitBoard.parse(notation));
+        }
+        return positions;
+    }
+
+    private PositionCorpus() {
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.silcos.permainan.logic;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TablebaseTest {
+
+    /* Pebbles of the tablebase generated, which takes well under a second */
+    private static final int MAX_PIECES = 3;
+
+    /* Positions won or lost further away are not searched */
+    private static final int MAX_SEARCHED_DISTANCE = 5;
+
+    private static final int RANDOM_POSITIONS = 400;
+
+    private static File sFile;
+    private static Tablebase sTablebase;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        sFile = File.createTempFile("permainan", ".tb");
+        TablebaseGenerator.generate(MAX_PIECES, sFile);
+        sTablebase = Tablebase.open(sFile);
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        sTablebase = null;
+        sFile.delete();
+    }
+
+    /**
+     * @return a position with {@link #MAX_PIECES} pebbles or less, of
+     *      which each player has at least one
+     */
+    private static BitBoard randomPosition(Random random) {
+        final long[] pieces = new long[2];
+        final int pieces0 = 1 + random.nextInt(MAX_PIECES - 1);
+        final int pieces1 = 1 + random.nextInt(MAX_PIECES - pieces0);
+
+        for (int id = 0; id < 2; id++) {
+            while (Long.bitCount(pieces[id]) < ((id == 0) ? pieces0 : pieces1)) {
+                final long bit = BitBoard.bit(random.nextInt(BitBoard.CELLS));
+                if (((pieces[0] | pieces[1]) & bit) == 0)
+                    pieces[id] |= bit;
+            }
+        }
+
+        return new BitBoard(pieces[0], pieces[1], random.nextInt(2));
+    }
+
+    @Test
+    public void distancesMatchFixedDepthSearches() {
+        final Random random = new Random(0);
+        final PermainanSearch search = new PermainanSearch(new TranspositionTable(1));
+        int searched = 0;
+
+        for (int i = 0; i < RANDOM_POSITIONS; i++) {
+            final BitBoard position = randomPosition(random);
+            final int value = sTablebase.probe(position);
+            final int distance = Tablebase.distanceOf(value);
+            final int result = Tablebase.resultOf(value);
+
+            assertTrue(position.toNotation(), sTablebase.covers(position));
+            if (result != Tablebase.DRAW && distance > MAX_SEARCHED_DISTANCE)
+                continue;
+
+            /* One ply more, as a side without inputs is only seen as lost
+               above the nominal depth */
+            final int depth = (result == Tablebase.DRAW) ? MAX_SEARCHED_DISTANCE : distance + 1;
+            search.findBestInput(position, depth);
+            ++searched;
+
+            final int score = (position.sideToMove() == 0) ? search.bestScore() : -search.bestScore();
+            final String message = position.toNotation() + " at depth " + depth;
+
+            switch (result) {
+                case Tablebase.WIN:
+                    assertEquals(message, PermainanSearch.WIN_SCORE - distance, score);
+                    break;
+                case Tablebase.LOSS:
+                    assertEquals(message, -(PermainanSearch.WIN_SCORE - distance), score);
+                    break;
+                default:
+                    assertTrue(message, Math.abs(score) < PermainanSearch.WIN_SCORE - PermainanSearch.MAX_DEPTH);
+                    break;
+            }
+        }
+
+        assertTrue(searched > RANDOM_POSITIONS / 2);
+    }
+
+    @Test
+    public void bestMoveKeepsTheValue() {
+        final Random random = new Random(1);
+
+        for (int i = 0; i < RANDOM_POSITIONS; i++) {
+            final BitBoard position = randomPosition(random);
+            final int value = sTablebase.probe(position);
+            final int move = sTablebase.bestMove(position);
+
+            if (Tablebase.resultOf(value) == Tablebase.LOSS && Tablebase.distanceOf(value) == 0) {
+                assertEquals(position.toNotation(), 0, move);
+                continue;
+            }
+
+            final BitBoard next = position.doMove(MoveGenerator.from(move), MoveGenerator.to(move));
+            final String message = position.toNotation() + " to " + next.toNotation();
+
+            if (next.pieceCount(next.sideToMove()) == 0) {
+                assertEquals(message, Tablebase.WIN, Tablebase.resultOf(value));
+                assertEquals(message, 1, Tablebase.distanceOf(value));
+                continue;
+            }
+
+            final int nextValue = sTablebase.probe(next);
+            switch (Tablebase.resultOf(value)) {
+                case Tablebase.WIN:
+                    assertEquals(message, Tablebase.LOSS, Tablebase.resultOf(nextValue));
+                    assertEquals(message, Tablebase.distanceOf(value) - 1, Tablebase.distanceOf(nextValue));
+                    break;
+                case Tablebase.LOSS:
+                    assertEquals(message, Tablebase.WIN, Tablebase.resultOf(nextValue));
+                    assertEquals(message, Tablebase.distanceOf(value) - 1, Tablebase.distanceOf(nextValue));
+                    break;
+                default:
+                    assertEquals(message, Tablebase.DRAW, Tablebase.resultOf(nextValue));
+                    break;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.silcos.permainan.logic;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThreatMapTest {
+
+    /* Random inputs played from each position of the corpus */
+    private static final int WALK_LENGTH = 200;
+
+    /**
+     * @return mask of the cells the given player can kill on, by the
+     *      captures of {@link MoveGenerator}
+     */
+    private static long capturedCells(BitBoard position, int playerId, int[] moves) {
+        final BitBoard mover = new BitBoard(position);
+        mover.setSideToMove(playerId);
+
+        long cells = 0;
+        final int captures = MoveGenerator.generateCaptures(mover, moves, 0);
+        for (int i = 0; i < captures; i++) {
+            cells |= BitBoard.bit(MoveGenerator.to(moves[i]));
+        }
+
+        return cells;
+    }
+
+    @Test
+    public void builtAndUpdatedMapsMatchGeneratedKills() {
+        final Random random = new Random(0);
+        final int[] moves = new int[MoveGenerator.MAX_MOVES];
+        final ThreatMap updated = new ThreatMap();
+
+        for (BitBoard position : PositionCorpus.allPositions()) {
+            final BitBoard board = new BitBoard(position);
+
+            for (int i = 0; i < WALK_LENGTH; i++) {
+                final ThreatMap built = new ThreatMap(board);
+                updated.update(board);
+
+                for (int playerId = 0; playerId < 2; playerId++) {
+                    final long expected = capturedCells(board, playerId, moves);
+                    final String message = board.toNotation() + " for player " + playerId;
+
+                    assertEquals(message + " built", expected, built.threats(playerId));
+                    assertEquals(message + " updated", expected, updated.threats(playerId));
+                    assertEquals(message + " in danger", expected,
+                            built.inDanger(1 - playerId));
+                }
+
+                final int count = MoveGenerator.generate(board, moves, 0);
+                if (count == 0)
+                    break;
+
+                final int move = moves[random.nextInt(count)];
+                board.makeMove(MoveGenerator.from(move), MoveGenerator.to(move));
+            }
+        }
+    }
+
+}